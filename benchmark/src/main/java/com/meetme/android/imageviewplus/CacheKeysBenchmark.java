@@ -0,0 +1,67 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The keys computed for every sized request: its hash code, computed once when it is built and used to look it up in memory and among the loads
+ * in flight, and its disk cache file name, computed for every memory cache miss. Across short file paths and long content Uris.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeysBenchmark {
+    @Param({ "file:///sdcard/DCIM/IMG_0042.jpg",
+            "content://com.android.providers.media.documents/document/image%3A1234567?thumbnail=true&width=1080&height=1920" })
+    public String uri;
+
+    private final String mVersion = "1400000000:2457600";
+    private int mNext;
+
+    @Benchmark
+    public int requestHash() {
+        // As Uri.hashCode(), which hashes the string form
+        return CacheKeys.requestHash(uri, 0, 540 + (mNext++ & 7), 540, Scale.CENTER_CROP, false, Config.RGB_565, null, 0);
+    }
+
+    @Benchmark
+    public String diskKey() {
+        return CacheKeys.diskKey(uri, mVersion, 540 + (mNext++ & 7), 540, Scale.CENTER_CROP, false, Config.ARGB_8888, Config.RGB_565, false);
+    }
+
+    /**
+     * Stand-ins for ImageViewPlus.PlusScaleType and Bitmap.Config, which are hashed and printed like any enum
+     */
+    enum Scale {
+        CENTER_CROP
+    }
+
+    enum Config {
+        ARGB_8888, RGB_565
+    }
+}
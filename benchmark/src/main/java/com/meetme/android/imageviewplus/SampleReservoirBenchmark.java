@@ -0,0 +1,64 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording a load event into, and reading a percentile out of, the reservoirs behind {@link ImageLoadMetrics}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleReservoirBenchmark {
+    @Param({ "128", "512", "4096" })
+    public int capacity;
+
+    private SampleReservoir mReservoir;
+    private long mNext;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mReservoir = new SampleReservoir(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            mReservoir.record(random.nextInt(100000000));
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mReservoir.record(mNext++);
+    }
+
+    @Benchmark
+    public long percentile() {
+        return mReservoir.percentile(90);
+    }
+}
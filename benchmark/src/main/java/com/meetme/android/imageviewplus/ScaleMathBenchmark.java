@@ -0,0 +1,75 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ImageViewPlus.PlusScaleType#TOP_CROP} matrix math run by every <code>setFrame</code>, and the sample size and decoded size
+ * chosen by every size-aware decode, across image and frame sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScaleMathBenchmark {
+    @Param({ "96x96", "1024x768", "4032x3024", "12000x9000" })
+    public String imageSize;
+
+    @Param({ "144x144", "1080x608" })
+    public String frameSize;
+
+    private int mImageWidth;
+    private int mImageHeight;
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    @Setup
+    public void setUp() {
+        final String[] image = imageSize.split("x");
+        final String[] frame = frameSize.split("x");
+        mImageWidth = Integer.parseInt(image[0]);
+        mImageHeight = Integer.parseInt(image[1]);
+        mFrameWidth = Integer.parseInt(frame[0]);
+        mFrameHeight = Integer.parseInt(frame[1]);
+    }
+
+    @Benchmark
+    public float topCropScale() {
+        return ScaleMath.computeTopCropScale(mFrameWidth, mFrameHeight, mImageWidth, mImageHeight);
+    }
+
+    @Benchmark
+    public int sampleSize() {
+        return ScaleMath.computeSampleSize(Math.max((float) mFrameWidth / mImageWidth, (float) mFrameHeight / mImageHeight));
+    }
+
+    @Benchmark
+    public int decodedSize() {
+        final float scale = Math.max((float) mFrameWidth / mImageWidth, (float) mFrameHeight / mImageHeight);
+        return ScaleMath.computeDecodedSize(mImageWidth, ScaleMath.computeSampleSize(scale), 0, 0);
+    }
+}
@@ -0,0 +1,63 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CacheKeysTest {
+    private static final String URI = "content://media/external/images/media/42";
+    private static final int TILED = 2;
+
+    @Test
+    public void hashIsHexMd5() {
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", CacheKeys.hash("abc"));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", CacheKeys.hash(""));
+    }
+
+    @Test
+    public void diskKeyHashesRequestParts() {
+        assertEquals(CacheKeys.hash(URI + "|1400000000:5120|320x240|CENTER_CROP|false|RGB_565|null"),
+                CacheKeys.diskKey(URI, "1400000000:5120", 320, 240, "CENTER_CROP", false, "RGB_565", null, false));
+        assertEquals(CacheKeys.hash(URI + "|7|320x240|TOP_CROP|true|null|RGB_565|region"),
+                CacheKeys.diskKey(URI, "7", 320, 240, "TOP_CROP", true, null, "RGB_565", true));
+    }
+
+    @Test
+    public void diskKeyChangesWithVersion() {
+        assertFalse(CacheKeys.diskKey(URI, "1", 320, 240, null, false, null, null, false)
+                .equals(CacheKeys.diskKey(URI, "2", 320, 240, null, false, null, null, false)));
+    }
+
+    @Test
+    public void requestHashMatchesFieldByFieldHash() {
+        int expected = URI.hashCode();
+        expected = 31 * expected;
+        expected = 31 * expected + 320;
+        expected = 31 * expected + 240;
+        expected = 31 * expected + "FIT_CENTER".hashCode();
+        expected = 31 * expected + 1;
+        expected = 31 * expected;
+        expected = 31 * expected;
+        expected = 31 * expected + TILED;
+
+        assertEquals(expected, CacheKeys.requestHash(URI, 0, 320, 240, "FIT_CENTER", true, null, null, TILED));
+    }
+}
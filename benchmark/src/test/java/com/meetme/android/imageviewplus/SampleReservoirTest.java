@@ -0,0 +1,86 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleReservoirTest {
+    @Test
+    public void percentileOfNoSamplesIsZero() {
+        assertEquals(0, new SampleReservoir(4).percentile(50));
+    }
+
+    @Test
+    public void percentileIsNearestRank() {
+        final SampleReservoir reservoir = new SampleReservoir(10);
+
+        for (int i = 10; i >= 1; i--) {
+            reservoir.record(i);
+        }
+
+        assertEquals(1, reservoir.percentile(0));
+        assertEquals(1, reservoir.percentile(10));
+        assertEquals(5, reservoir.percentile(50));
+        assertEquals(9, reservoir.percentile(90));
+        assertEquals(10, reservoir.percentile(100));
+        assertEquals(10, reservoir.percentile(150));
+    }
+
+    @Test
+    public void onlyTheMostRecentSamplesAreKept() {
+        final SampleReservoir reservoir = new SampleReservoir(3);
+
+        for (int i = 1; i <= 7; i++) {
+            reservoir.record(i * 100);
+        }
+
+        assertEquals(7, reservoir.count());
+        assertEquals(500, reservoir.percentile(0));
+        assertEquals(700, reservoir.percentile(100));
+    }
+
+    @Test
+    public void clearStartsOver() {
+        final SampleReservoir reservoir = new SampleReservoir(3);
+        reservoir.record(1000);
+        reservoir.record(2000);
+        reservoir.clear();
+        reservoir.record(5);
+
+        assertEquals(1, reservoir.count());
+        assertEquals(5, reservoir.percentile(0));
+        assertEquals(5, reservoir.percentile(100));
+    }
+
+    @Test
+    public void countSaturatesAndRecordingKeepsWorkingPastIntegerMaxValue() {
+        final SampleReservoir reservoir = new SampleReservoir(7);
+
+        for (long i = 0; i < Integer.MAX_VALUE + 10L; i++) {
+            reservoir.record(1);
+        }
+
+        reservoir.record(2);
+
+        assertEquals(Integer.MAX_VALUE, reservoir.count());
+        assertEquals(1, reservoir.percentile(0));
+        assertEquals(2, reservoir.percentile(100));
+    }
+}
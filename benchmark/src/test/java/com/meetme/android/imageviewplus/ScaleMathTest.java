@@ -0,0 +1,71 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScaleMathTest {
+    @Test
+    public void topCropFillsWidth() {
+        assertEquals(0.5f, ScaleMath.computeTopCropScale(500, 200, 1000, 1000), 0f);
+        assertEquals(2f, ScaleMath.computeTopCropScale(200, 100, 100, 400), 0f);
+    }
+
+    @Test
+    public void topCropDefersToCenterCropWhenHeightFallsShort() {
+        assertEquals(0f, ScaleMath.computeTopCropScale(500, 500, 1000, 500), 0f);
+    }
+
+    @Test
+    public void sampleSizeIsLargestPowerOfTwoNotBelowScale() {
+        assertEquals(1, ScaleMath.computeSampleSize(1f));
+        assertEquals(1, ScaleMath.computeSampleSize(0.51f));
+        assertEquals(2, ScaleMath.computeSampleSize(0.5f));
+        assertEquals(4, ScaleMath.computeSampleSize(0.2f));
+        assertEquals(1, ScaleMath.computeSampleSize(2f));
+        assertEquals(1, ScaleMath.computeSampleSize(0f));
+    }
+
+    @Test
+    public void decodedSizeIsSubsampledRoundingUp() {
+        assertEquals(1000, ScaleMath.computeDecodedSize(1000, 1, 0, 0));
+        assertEquals(250, ScaleMath.computeDecodedSize(1000, 4, 0, 0));
+        assertEquals(1, ScaleMath.computeDecodedSize(3, 8, 0, 0));
+    }
+
+    @Test
+    public void decodedSizeOfOddSizesKeepsPartialBlock() {
+        assertEquals(334, ScaleMath.computeDecodedSize(1333, 4, 0, 0));
+        assertEquals(501, ScaleMath.computeDecodedSize(1001, 2, 0, 0));
+        assertEquals(63, ScaleMath.computeDecodedSize(1001, 16, 0, 0));
+        assertEquals(1, ScaleMath.computeDecodedSize(1, 2, 0, 0));
+    }
+
+    @Test
+    public void decodedSizeIsScaledAndRoundedToNearest() {
+        // 3000x2000 subsampled by 4 to 750x500, then scaled to a width of 640
+        assertEquals(640, ScaleMath.computeDecodedSize(3000, 4, 750, 640));
+        assertEquals(427, ScaleMath.computeDecodedSize(2000, 4, 750, 640));
+        assertEquals(500, ScaleMath.computeDecodedSize(2000, 4, 750, 750));
+
+        // 1333 subsampled by 4 to 334, which is the density that scales it to exactly 640
+        assertEquals(640, ScaleMath.computeDecodedSize(1333, 4, 334, 640));
+    }
+}
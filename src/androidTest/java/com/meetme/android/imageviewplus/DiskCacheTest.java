@@ -0,0 +1,173 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class DiskCacheTest extends AndroidTestCase {
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    private File mDirectory;
+    private Bitmap mBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "DiskCacheTest");
+        deleteDirectory();
+        mBitmap = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testEntriesSurviveReopening() {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        assertTrue(cache.put("a", mBitmap));
+        assertTrue(cache.put("b", mBitmap));
+        cache.remove("a");
+
+        final DiskCache reopened = new DiskCache(mDirectory, MAX_SIZE);
+        assertNull(reopened.get("a"));
+        assertNotNull(reopened.get("b"));
+        assertEquals(cache.size(), reopened.size());
+    }
+
+    public void testAccessOrderSurvivesReopening() {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+        final long entrySize = cache.size();
+        cache.put("b", mBitmap);
+        cache.get("a");
+
+        // Room for two entries; the third evicts the least recently used, which the journal says is b
+        final DiskCache reopened = new DiskCache(mDirectory, entrySize * 2);
+        reopened.put("c", mBitmap);
+
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertNotNull(reopened.get("c"));
+    }
+
+    public void testPartialLastLineIsIgnored() throws IOException {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+
+        // A crash while appending the line for an entry whose file was never renamed into place
+        append(DiskCache.JOURNAL_FILE, "C b");
+        write("b.0.tmp", "partial");
+
+        final DiskCache reopened = new DiskCache(mDirectory, MAX_SIZE);
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertFalse(new File(mDirectory, "b.0.tmp").exists());
+    }
+
+    public void testIncompleteEntryIsDropped() throws IOException {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+        cache.put("b", mBitmap);
+        final long entrySize = cache.size() / 2;
+
+        write("b", "truncated");
+
+        final DiskCache reopened = new DiskCache(mDirectory, MAX_SIZE);
+        assertNotNull(reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertFalse(new File(mDirectory, "b").exists());
+        assertEquals(entrySize, reopened.size());
+    }
+
+    public void testCorruptJournalDiscardsEntries() throws IOException {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+
+        write(DiskCache.JOURNAL_FILE, "not a journal\nC a 10\n");
+
+        final DiskCache reopened = new DiskCache(mDirectory, MAX_SIZE);
+        assertNull(reopened.get("a"));
+        assertEquals(0, reopened.size());
+
+        // The stray entry file is cleaned up, and the rebuilt journal is usable again
+        assertFalse(new File(mDirectory, "a").exists());
+        assertTrue(reopened.put("a", mBitmap));
+        assertNotNull(new DiskCache(mDirectory, MAX_SIZE).get("a"));
+    }
+
+    public void testUnknownFilesAreDeleted() throws IOException {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+
+        write("stray", "left over");
+        write(DiskCache.JOURNAL_FILE_TEMP, DiskCache.JOURNAL_HEADER + "\n");
+
+        new DiskCache(mDirectory, MAX_SIZE).get("a");
+        assertFalse(new File(mDirectory, "stray").exists());
+        assertFalse(new File(mDirectory, DiskCache.JOURNAL_FILE_TEMP).exists());
+        assertTrue(new File(mDirectory, "a").exists());
+    }
+
+    public void testClearRemovesEverything() {
+        final DiskCache cache = new DiskCache(mDirectory, MAX_SIZE);
+        cache.put("a", mBitmap);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(new DiskCache(mDirectory, MAX_SIZE).get("a"));
+        assertFalse(new File(mDirectory, "a").exists());
+    }
+
+    private void write(String name, String content) throws IOException {
+        writeFile(name, content, false);
+    }
+
+    private void append(String name, String content) throws IOException {
+        writeFile(name, content, true);
+    }
+
+    private void writeFile(String name, String content, boolean append) throws IOException {
+        final OutputStream out = new FileOutputStream(new File(mDirectory, name), append);
+
+        try {
+            out.write(content.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mDirectory.delete();
+    }
+}
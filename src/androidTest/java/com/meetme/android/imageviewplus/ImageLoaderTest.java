@@ -0,0 +1,239 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads content from a source that records the order it is opened in, behind a load that holds the loader's only thread until released
+ */
+public class ImageLoaderTest extends AndroidTestCase {
+    private static final String SCHEME = "imageloadertest";
+    private static final Uri BLOCKER = Uri.parse(SCHEME + "://blocker");
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final List<String> mOpened = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch mBlocked = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private ImageLoader mLoader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentRegistry.getInstance().registerSource(SCHEME, new RecordingSource());
+        mLoader = new ImageLoader(1);
+
+        mLoader.load(getContext(), request(BLOCKER), null, null, new CountingCallback(new CountDownLatch(1)));
+        assertTrue(mBlocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRelease.countDown();
+        ContentRegistry.getInstance().registerSource(SCHEME, null);
+        super.tearDown();
+    }
+
+    public void testLoadsOfSameRequestShareOneDecode() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(3);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        mLoader.load(getContext(), request("a"), null, null, callback);
+        mLoader.load(getContext(), request("a"), null, null, callback);
+        mLoader.load(getContext(), request("a"), null, null, callback);
+
+        assertEquals(2, mLoader.getInFlightCount());
+        assertEquals(2, mLoader.coalescedCount());
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, callback.mCount);
+        assertEquals(1, Collections.frequency(mOpened, "a"));
+    }
+
+    public void testDifferentRequestsAreNotCoalesced() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(2);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        mLoader.load(getContext(), request("a"), null, null, callback);
+        mLoader.load(getContext(), request("b"), null, null, callback);
+
+        assertEquals(3, mLoader.getInFlightCount());
+        assertEquals(0, mLoader.coalescedCount());
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(opened("a", "b"), mOpened);
+    }
+
+    public void testHigherPriorityRunsFirst() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(3);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        mLoader.load(getContext(), request("prefetch"), null, null, ImageLoader.PRIORITY_PREFETCH, callback);
+        mLoader.load(getContext(), request("hidden"), null, null, ImageLoader.PRIORITY_HIDDEN, callback);
+        mLoader.load(getContext(), request("shown"), null, null, ImageLoader.PRIORITY_NORMAL, callback);
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(opened("shown", "hidden", "prefetch"), mOpened);
+    }
+
+    public void testSetPriorityRequeues() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(2);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        final ImageLoader.LoadTask task = mLoader.load(getContext(), request("a"), null, null, ImageLoader.PRIORITY_HIDDEN, callback);
+        mLoader.load(getContext(), request("b"), null, null, ImageLoader.PRIORITY_HIDDEN, callback);
+        task.setPriority(ImageLoader.PRIORITY_PREFETCH);
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(opened("b", "a"), mOpened);
+    }
+
+    public void testSubscriberRaisesSharedPriority() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(3);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        mLoader.load(getContext(), request("a"), null, null, ImageLoader.PRIORITY_NORMAL, callback);
+        mLoader.load(getContext(), request("b"), null, null, ImageLoader.PRIORITY_PREFETCH, callback);
+        final ImageLoader.LoadTask raised = mLoader.load(getContext(), request("b"), null, null, ImageLoader.PRIORITY_NORMAL + 1, callback);
+
+        assertEquals(ImageLoader.PRIORITY_NORMAL + 1, raised.getPriority());
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(opened("b", "a"), mOpened);
+    }
+
+    public void testCancellingLastSubscriberDropsQueuedDecode() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CountingCallback cancelled = new CountingCallback(new CountDownLatch(2));
+        final CountingCallback callback = new CountingCallback(finished);
+
+        final ImageLoader.LoadTask first = mLoader.load(getContext(), request("a"), null, null, cancelled);
+        final ImageLoader.LoadTask second = mLoader.load(getContext(), request("a"), null, null, cancelled);
+        mLoader.load(getContext(), request("b"), null, null, callback);
+
+        first.cancel();
+        assertEquals(0, mLoader.droppedCount());
+        second.cancel();
+        assertEquals(1, mLoader.droppedCount());
+        assertEquals(2, mLoader.getInFlightCount());
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, cancelled.mCount);
+        assertEquals(opened("b"), mOpened);
+    }
+
+    public void testLoadAfterCancelStartsOver() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CountingCallback callback = new CountingCallback(finished);
+
+        mLoader.load(getContext(), request("a"), null, null, callback).cancel();
+        mLoader.load(getContext(), request("a"), null, null, callback);
+        assertEquals(0, mLoader.coalescedCount());
+
+        mRelease.countDown();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, callback.mCount);
+        assertEquals(opened("a"), mOpened);
+    }
+
+    private static ImageRequest request(String host) {
+        return request(Uri.parse(SCHEME + "://" + host));
+    }
+
+    private static ImageRequest request(Uri uri) {
+        return new ImageRequest.Builder().setUri(uri).build();
+    }
+
+    /**
+     * @return the hosts expected to be opened after the blocker
+     */
+    private static List<String> opened(String... hosts) {
+        final List<String> opened = new ArrayList<String>();
+        opened.add(BLOCKER.getHost());
+        Collections.addAll(opened, hosts);
+        return opened;
+    }
+
+    private class RecordingSource implements ContentSource {
+        @Override
+        public String getType(Context context, Uri uri) {
+            return null;
+        }
+
+        @Override
+        public InputStream openStream(Context context, Uri uri) throws IOException {
+            mOpened.add(uri.getHost());
+
+            if (BLOCKER.equals(uri)) {
+                mBlocked.countDown();
+
+                try {
+                    mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+            }
+
+            // Not an image; the load finishes with null
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException {
+            return null;
+        }
+    }
+
+    /**
+     * Invoked on the UI thread
+     */
+    private static class CountingCallback implements ImageLoader.Callback {
+        private final CountDownLatch mFinished;
+        volatile int mCount;
+
+        CountingCallback(CountDownLatch finished) {
+            mFinished = finished;
+        }
+
+        @Override
+        public void onLoadFinished(ImageLoader.LoadTask task, Drawable drawable) {
+            mCount++;
+            mFinished.countDown();
+        }
+    }
+}
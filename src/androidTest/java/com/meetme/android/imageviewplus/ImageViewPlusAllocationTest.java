@@ -0,0 +1,129 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import com.meetme.android.imageviewplus.ImageViewPlus.PlusScaleType;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Fails if the steady-state layout, bind and draw paths start allocating again. Each path is run once to create whatever it lazily reuses, then
+ * repeatedly while the allocations of this thread are counted.
+ */
+public class ImageViewPlusAllocationTest extends AndroidTestCase {
+    private static final int SIZE = 100;
+    private static final int ITERATIONS = 100;
+    private static final int CONTENT_LAYER_ID = 1;
+
+    private ImageViewPlus mView;
+    private Bitmap mBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mView = new ImageViewPlus(getContext());
+        mView.setLayoutParams(new ViewGroup.LayoutParams(SIZE, SIZE));
+        mBitmap = Bitmap.createBitmap(SIZE / 2, SIZE * 2, Bitmap.Config.ARGB_8888);
+    }
+
+    public void testTopCropLayoutDoesNotAllocate() {
+        mView.setScaleType(PlusScaleType.TOP_CROP);
+        mView.setImageBitmap(mBitmap);
+
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                // Every layout pass recomputes the top crop matrix and scale type, whether or not the frame changed
+                mView.layout(0, 0, SIZE, SIZE);
+                mView.setScaleType(PlusScaleType.TOP_CROP);
+            }
+        });
+    }
+
+    public void testSettingTheShownBitmapDoesNotAllocate() {
+        mView.setImageBitmap(mBitmap);
+
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mView.setImageBitmap(mBitmap);
+            }
+        });
+    }
+
+    public void testLayerPlaceholderDoesNotAllocate() {
+        final LayerDrawable layers = new LayerDrawable(new Drawable[] { new ColorDrawable(0), new ColorDrawable(0x30000000) });
+        layers.setId(0, CONTENT_LAYER_ID);
+        mView.setLayerResources(layers, CONTENT_LAYER_ID);
+
+        final Drawable content = new ColorDrawable(0xff000000);
+
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mView.setImageDrawable(content);
+                mView.setImageDrawable(null);
+            }
+        });
+    }
+
+    public void testDrawDoesNotAllocate() {
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mView.setScaleType(PlusScaleType.TOP_CROP);
+        mView.setImageBitmap(mBitmap);
+
+        assertNoAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mView.draw(canvas);
+            }
+        });
+    }
+
+    private void assertNoAllocations(Runnable path) {
+        layout();
+        path.run();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                path.run();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        assertEquals("Allocations in " + ITERATIONS + " iterations", 0, Debug.getThreadAllocCount());
+    }
+
+    private void layout() {
+        final int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        mView.measure(spec, spec);
+        mView.layout(0, 0, SIZE, SIZE);
+    }
+}
@@ -0,0 +1,89 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+public class ImageViewPlusLayerTest extends AndroidTestCase {
+    private static final int CONTENT_LAYER_ID = 1;
+    private static final int SIZE = 100;
+
+    private LayerDrawable mLayers;
+    private CountingImageViewPlus mView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLayers = new LayerDrawable(new Drawable[] { new ColorDrawable(0), new ColorDrawable(0x30000000) });
+        mLayers.setId(0, CONTENT_LAYER_ID);
+
+        mView = new CountingImageViewPlus(getContext());
+        mView.setLayoutParams(new ViewGroup.LayoutParams(SIZE, SIZE));
+        mView.setLayerResources(mLayers, CONTENT_LAYER_ID);
+        mView.setImageBitmap(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        layout();
+    }
+
+    public void testSameSizeContentSwapsLayerWithoutLayout() {
+        final Drawable before = mLayers.findDrawableByLayerId(CONTENT_LAYER_ID);
+        mView.mLayoutRequests = 0;
+
+        mView.setImageBitmap(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        // Clearing and setting the layer drawable again would have requested a layout for each
+        assertEquals(0, mView.mLayoutRequests);
+        assertNotSame(before, mLayers.findDrawableByLayerId(CONTENT_LAYER_ID));
+        assertSame(mView.getDrawable(), mLayers.findDrawableByLayerId(CONTENT_LAYER_ID));
+    }
+
+    public void testResizedContentRequestsLayout() {
+        mView.mLayoutRequests = 0;
+
+        mView.setImageBitmap(Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+
+        assertTrue(mView.mLayoutRequests > 0);
+        assertSame(mView.getDrawable(), mLayers.findDrawableByLayerId(CONTENT_LAYER_ID));
+    }
+
+    private void layout() {
+        final int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        mView.measure(spec, spec);
+        mView.layout(0, 0, SIZE, SIZE);
+    }
+
+    private static class CountingImageViewPlus extends ImageViewPlus {
+        int mLayoutRequests;
+
+        CountingImageViewPlus(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            mLayoutRequests++;
+            super.requestLayout();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+public class RefCountedBitmapDrawableTest extends AndroidTestCase {
+    private Bitmap mBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    public void testReleasingLastReferenceRecycles() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        drawable.setRecyclable(true);
+        drawable.acquire();
+        drawable.acquire();
+
+        drawable.release();
+        assertEquals(1, drawable.getRefCount());
+        assertFalse(drawable.isReleased());
+        assertFalse(mBitmap.isRecycled());
+
+        drawable.release();
+        assertEquals(0, drawable.getRefCount());
+        assertTrue(drawable.isReleased());
+        assertTrue(mBitmap.isRecycled());
+    }
+
+    public void testNotRecyclableUntilMarked() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        drawable.acquire();
+        drawable.release();
+
+        // Still owned by whoever hasn't marked it recyclable (e.g., the cache it is being inserted into)
+        assertFalse(drawable.isReleased());
+        assertFalse(mBitmap.isRecycled());
+
+        drawable.acquire();
+        drawable.setRecyclable(true);
+        drawable.release();
+        assertTrue(drawable.isReleased());
+    }
+
+    public void testUnbalancedReleaseIsIgnored() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        drawable.setRecyclable(true);
+
+        drawable.release();
+        assertEquals(0, drawable.getRefCount());
+        assertFalse(drawable.isReleased());
+
+        drawable.acquire();
+        assertEquals(1, drawable.getRefCount());
+    }
+
+    public void testConstantStateSharesCount() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        final RefCountedBitmapDrawable copy = (RefCountedBitmapDrawable) drawable.getConstantState().newDrawable();
+        drawable.setRecyclable(true);
+
+        drawable.acquire();
+        copy.acquire();
+        assertEquals(2, drawable.getRefCount());
+        assertSame(drawable.getBitmap(), copy.getBitmap());
+
+        drawable.release();
+        assertFalse(copy.isReleased());
+
+        copy.release();
+        assertTrue(drawable.isReleased());
+        assertTrue(copy.isReleased());
+    }
+
+    public void testConstantStateKeepsIntrinsicSize() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        drawable.setIntrinsicSize(80, 40);
+
+        final RefCountedBitmapDrawable copy = (RefCountedBitmapDrawable) drawable.getConstantState().newDrawable();
+        assertEquals(80, copy.getIntrinsicWidth());
+        assertEquals(40, copy.getIntrinsicHeight());
+    }
+
+    public void testConstantStateIsReused() {
+        final RefCountedBitmapDrawable drawable = newDrawable(null);
+        assertSame(drawable.getConstantState(), drawable.getConstantState());
+    }
+
+    public void testReleaseReturnsBitmapToPool() {
+        if (!BitmapPool.isReuseSupported()) {
+            return;
+        }
+
+        final BitmapPool pool = new BitmapPool(1024 * 1024);
+        final RefCountedBitmapDrawable drawable = newDrawable(pool);
+        drawable.setRecyclable(true);
+        drawable.acquire();
+        drawable.release();
+
+        assertTrue(drawable.isReleased());
+        assertFalse(mBitmap.isRecycled());
+        assertEquals(1, pool.count());
+        assertSame(mBitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testRejectedByPoolRecycles() {
+        final BitmapPool pool = new BitmapPool(1);
+        final RefCountedBitmapDrawable drawable = newDrawable(pool);
+        drawable.setRecyclable(true);
+        drawable.acquire();
+        drawable.release();
+
+        assertTrue(mBitmap.isRecycled());
+        assertEquals(0, pool.count());
+    }
+
+    private RefCountedBitmapDrawable newDrawable(BitmapPool pool) {
+        return new RefCountedBitmapDrawable(getContext().getResources(), mBitmap, pool);
+    }
+}
@@ -0,0 +1,438 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Movie;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Plays an animated GIF. Frames are rendered on a background thread into a small ring of Bitmaps that is allocated once when playback starts,
+ * so playing allocates no Bitmaps per frame. Until the first frame is rendered, the first frame decoded with the content is shown.
+ * <p/>
+ * All methods must be called from the main thread. Drawables created from the {@link #getConstantState() constant state} share the encoded
+ * content and the first frame, but each renders into its own ring.
+ *
+ * @see ImageViewPlus#setAnimatedImages(boolean)
+ */
+public class AnimatedGifDrawable extends Drawable implements Animatable {
+    /**
+     * The frame being drawn, the one drawn before it (which may still be referenced by a display list until the next frame is recorded) and the
+     * one being rendered
+     */
+    private static final int BUFFER_COUNT = 3;
+
+    /**
+     * How often a frame is rendered. {@link Movie} doesn't expose the content's own frame delays.
+     */
+    private static final int FRAME_INTERVAL_MS = 33;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Renders the frames of every animated drawable, one at a time
+     */
+    private static ExecutorService sFrameExecutor;
+
+    private final GifState mState;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    /**
+     * Only touched on the frame thread, apart from being handed over in the constructor
+     */
+    private Movie mMovie;
+    private final Canvas mFrameCanvas = new Canvas();
+
+    /**
+     * The frame ring, or null if playback hasn't started or the frames were {@link #releaseFrames() released}
+     */
+    private Bitmap[] mBuffers;
+
+    /**
+     * The index of the buffer being drawn, or -1 to draw the first frame
+     */
+    private int mFront = -1;
+
+    private boolean mRunning = false;
+
+    /**
+     * Whether a frame is being rendered. Only one frame is rendered at a time, and a new one isn't started until the last one is handed back.
+     */
+    private boolean mRenderPending = false;
+
+    /**
+     * Whether the content couldn't be read on the frame thread
+     */
+    private boolean mFailed = false;
+
+    /**
+     * The uptime at which the content's time 0 was shown
+     */
+    private long mStartTime;
+
+    /**
+     * The content time of the frame being drawn, and of the next frame to render
+     */
+    private long mShownTime = 0;
+    private long mNextTime;
+
+    // Handed to the frame thread with each render, and back with its result
+    private Bitmap[] mRenderBuffers;
+    private int mRenderIndex;
+    private int mRenderTime;
+    private long mRenderDuration;
+
+    private int mFrameCount = 0;
+    private int mRenderCount = 0;
+    private int mDroppedFrameCount = 0;
+    private long mTotalRenderTime = 0;
+    private long mMaxRenderTime = 0;
+
+    private final Runnable mRenderRunnable = new Runnable() {
+        @Override
+        public void run() {
+            renderFrame();
+        }
+    };
+
+    private final Runnable mRenderedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onFrameRendered();
+        }
+    };
+
+    private final Runnable mShowRunnable = new Runnable() {
+        @Override
+        public void run() {
+            showFrame();
+        }
+    };
+
+    /**
+     * @param data the encoded content
+     * @param movie the content decoded from <code>data</code>, positioned anywhere
+     * @param firstFrame the frame at time 0, at the drawable's size
+     * @param scale the scale of the drawable's size to the content's
+     * @param config the config of the frame ring
+     */
+    AnimatedGifDrawable(byte[] data, Movie movie, Bitmap firstFrame, float scale, Bitmap.Config config) {
+        this(new GifState(data, firstFrame, scale, config, movie.isOpaque(), movie.duration()));
+        mMovie = movie;
+    }
+
+    private AnimatedGifDrawable(GifState state) {
+        mState = state;
+    }
+
+    @Override
+    public void start() {
+        if (mRunning || mFailed) {
+            return;
+        }
+
+        mRunning = true;
+        mStartTime = SystemClock.uptimeMillis() - mShownTime;
+        mNextTime = mShownTime + FRAME_INTERVAL_MS;
+
+        if (mBuffers == null) {
+            final Bitmap firstFrame = mState.mFirstFrame;
+            mBuffers = new Bitmap[BUFFER_COUNT];
+
+            for (int i = 0; i < BUFFER_COUNT; i++) {
+                mBuffers[i] = Bitmap.createBitmap(firstFrame.getWidth(), firstFrame.getHeight(), mState.mConfig);
+            }
+        }
+
+        requestFrame();
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+        sMainHandler.removeCallbacks(mShowRunnable);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Stops playback and frees the frame ring, going back to drawing the first frame. The ring is allocated again if playback is restarted.
+     */
+    public void releaseFrames() {
+        stop();
+
+        final Bitmap[] buffers = mBuffers;
+        mBuffers = null;
+        mFront = -1;
+
+        if (buffers != null) {
+            // Recycled on the frame thread, after any frame still being rendered into them
+            getFrameExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Bitmap buffer : buffers) {
+                        buffer.recycle();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if no frame can be drawn: the first frame was recycled, or the content couldn't be read
+     */
+    public boolean isRecycled() {
+        return mFailed || mState.mFirstFrame.isRecycled();
+    }
+
+    /**
+     * @return the number of frames shown since this drawable was created
+     */
+    public int frameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the number of frames skipped because they were rendered too late to be shown on time
+     */
+    public int droppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return the number of frames rendered, shown or not
+     */
+    public int renderedFrameCount() {
+        return mRenderCount;
+    }
+
+    /**
+     * @return the average time taken to render a frame, in milliseconds
+     */
+    public long averageRenderTime() {
+        return mRenderCount > 0 ? mTotalRenderTime / mRenderCount : 0;
+    }
+
+    /**
+     * @return the longest time taken to render a frame, in milliseconds
+     */
+    public long maxRenderTime() {
+        return mMaxRenderTime;
+    }
+
+    /**
+     * Renders the next frame on the frame thread, unless one is already being rendered
+     */
+    private void requestFrame() {
+        if (!mRunning || mRenderPending) {
+            return;
+        }
+
+        final int duration = mState.mDuration;
+
+        mRenderPending = true;
+        mRenderBuffers = mBuffers;
+        mRenderIndex = (mFront + 1) % BUFFER_COUNT;
+        mRenderTime = duration > 0 ? (int) (mNextTime % duration) : 0;
+        getFrameExecutor().execute(mRenderRunnable);
+    }
+
+    /**
+     * Runs on the frame thread
+     */
+    private void renderFrame() {
+        final long start = SystemClock.uptimeMillis();
+        final Bitmap buffer = mRenderBuffers[mRenderIndex];
+
+        if (mMovie == null) {
+            mMovie = Movie.decodeByteArray(mState.mData, 0, mState.mData.length);
+        }
+
+        if (mMovie != null && !buffer.isRecycled()) {
+            buffer.eraseColor(Color.TRANSPARENT);
+            mFrameCanvas.setBitmap(buffer);
+
+            final int saveCount = mFrameCanvas.save();
+            mFrameCanvas.scale(mState.mScale, mState.mScale);
+            mMovie.setTime(mRenderTime);
+            mMovie.draw(mFrameCanvas, 0, 0);
+            mFrameCanvas.restoreToCount(saveCount);
+        }
+
+        mRenderDuration = SystemClock.uptimeMillis() - start;
+        sMainHandler.post(mRenderedRunnable);
+    }
+
+    private void onFrameRendered() {
+        mRenderPending = false;
+        mRenderCount++;
+        mTotalRenderTime += mRenderDuration;
+        mMaxRenderTime = Math.max(mMaxRenderTime, mRenderDuration);
+
+        if (mMovie == null) {
+            mFailed = true;
+            stop();
+            invalidateSelf();
+            return;
+        }
+
+        if (!mRunning || mRenderBuffers != mBuffers) {
+            // Stopped, or the ring was released, while rendering; render again if it has since been restarted
+            requestFrame();
+            return;
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        final long dueTime = mStartTime + mNextTime;
+
+        if (now > dueTime + FRAME_INTERVAL_MS) {
+            // Too late; skip ahead to the frame that is due now rather than falling further behind
+            final long behind = (now - dueTime) / FRAME_INTERVAL_MS;
+            mDroppedFrameCount += behind;
+            mNextTime += behind * FRAME_INTERVAL_MS;
+            requestFrame();
+        } else if (now >= dueTime) {
+            showFrame();
+        } else {
+            sMainHandler.postAtTime(mShowRunnable, dueTime);
+        }
+    }
+
+    private void showFrame() {
+        mFront = mRenderIndex;
+        mShownTime = mNextTime;
+        mNextTime += FRAME_INTERVAL_MS;
+        mFrameCount++;
+        invalidateSelf();
+        requestFrame();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Bitmap frame = mFront >= 0 && mBuffers != null ? mBuffers[mFront] : mState.mFirstFrame;
+
+        if (!frame.isRecycled()) {
+            canvas.drawBitmap(frame, null, getBounds(), mPaint);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mState.mFirstFrame.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mState.mFirstFrame.getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mState.mOpaque && mPaint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AnimatedGifDrawable[frames=%d,dropped=%d,rendered=%d,avgRender=%dms,maxRender=%dms]", mFrameCount,
+                mDroppedFrameCount, mRenderCount, averageRenderTime(), mMaxRenderTime);
+    }
+
+    private static synchronized ExecutorService getFrameExecutor() {
+        if (sFrameExecutor == null) {
+            sFrameExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "ImageViewPlus frames");
+                }
+            });
+        }
+
+        return sFrameExecutor;
+    }
+
+    /**
+     * The encoded content and its first frame, shared by every drawable created from the same decode
+     */
+    private static final class GifState extends ConstantState {
+        final byte[] mData;
+        final Bitmap mFirstFrame;
+        final float mScale;
+        final Bitmap.Config mConfig;
+        final boolean mOpaque;
+        final int mDuration;
+
+        GifState(byte[] data, Bitmap firstFrame, float scale, Bitmap.Config config, boolean opaque, int duration) {
+            mData = data;
+            mFirstFrame = firstFrame;
+            mScale = scale;
+            mConfig = config;
+            mOpaque = opaque;
+            mDuration = duration;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new AnimatedGifDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
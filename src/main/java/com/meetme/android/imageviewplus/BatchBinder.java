@@ -0,0 +1,99 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+
+/**
+ * Binds content to many {@link ImageViewPlus} instances in one pass, such as a page of grid cells being rebound during a fling:
+ * <pre>
+ * new BatchBinder().bind(first, firstUri).bind(second, secondUri).commit();
+ * </pre>
+ * Compared to calling {@link ImageViewPlus#setImageURI(Uri)} on each view, every view's drawable is replaced once rather than reset and then set:
+ * content found in the memory cache is shown straight away, and the rest shows the default drawable. Views that don't wrap their content don't
+ * request a layout for it, and each view is invalidated (and laid out, if it must be) once, after every view is bound. The loads of
+ * {@link ImageViewPlus#setAsyncLoading(boolean) asynchronously loading} views are queued on the {@link ImageLoader} together once every view is
+ * bound, grouped by source (see {@link ImageLoader.Batch}); other views still decode their content during the pass.
+ * <p/>
+ * Bindings are applied in the order they were added, so a view bound twice shows the later content. Not thread safe; use it on the UI thread.
+ */
+public class BatchBinder {
+    private final ArrayList<Binding> mBindings = new ArrayList<Binding>();
+
+    /**
+     * @param view the view to bind
+     * @param uri the Uri of the content, or null for none
+     * @return this binder
+     */
+    public BatchBinder bind(ImageViewPlus view, Uri uri) {
+        mBindings.add(new Binding(view, uri, 0));
+        return this;
+    }
+
+    /**
+     * @param view the view to bind
+     * @param resId the resource identifier of the content, or 0 for none
+     * @return this binder
+     */
+    public BatchBinder bind(ImageViewPlus view, int resId) {
+        mBindings.add(new Binding(view, null, resId));
+        return this;
+    }
+
+    /**
+     * @return the number of bindings added since creation or the last {@link #commit()}
+     */
+    public int size() {
+        return mBindings.size();
+    }
+
+    /**
+     * Binds every view added since creation or the last commit, then queues their loads. The binder may be reused afterwards.
+     */
+    public void commit() {
+        final ImageLoader.Batch batch = ImageLoader.getInstance().newBatch();
+
+        try {
+            for (Binding binding : mBindings) {
+                binding.view.bind(binding.uri, binding.resId, batch);
+            }
+        } finally {
+            for (Binding binding : mBindings) {
+                binding.view.endBatch();
+            }
+
+            mBindings.clear();
+            // Even if a view threw, the loads already added must be queued; later loads of the same content wait on them
+            batch.submit();
+        }
+    }
+
+    private static class Binding {
+        final ImageViewPlus view;
+        final Uri uri;
+        final int resId;
+
+        Binding(ImageViewPlus view, Uri uri, int resId) {
+            this.view = view;
+            this.uri = uri;
+            this.resId = resId;
+        }
+    }
+}
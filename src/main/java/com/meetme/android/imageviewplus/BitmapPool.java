@@ -0,0 +1,308 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable Bitmaps that can be reused as decode targets through {@link android.graphics.BitmapFactory.Options#inBitmap}, so that decoding
+ * doesn't allocate (and later garbage collect) a new pixel buffer for every image.
+ * <p/>
+ * Bitmaps are bucketed by their byte size. Before KitKat a decode target must match the decoded width, height and config exactly; from KitKat on
+ * any pooled Bitmap at least as large as needed (but no more than {@link #MAX_SIZE_MULTIPLE} times larger) can be reconfigured and reused.
+ * <p/>
+ * Bitmap reuse requires Honeycomb; on older platforms the pool never accepts anything.
+ *
+ * @see ImageViewPlus#setBitmapReuseEnabled(boolean)
+ */
+public class BitmapPool {
+    /**
+     * Fraction of the VM heap used by the default pool
+     */
+    private static final int DEFAULT_HEAP_DIVISOR = 16;
+
+    /**
+     * The largest factor by which a reused Bitmap may exceed the requested size on KitKat and above
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static BitmapPool sInstance;
+
+    /**
+     * Pooled bitmaps, bucketed by byte size
+     */
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+
+    /**
+     * Pooled bitmaps, least recently added first. A set, so finding one to remove it doesn't scan the pool.
+     */
+    private final LinkedHashSet<Bitmap> mOrder = new LinkedHashSet<Bitmap>();
+
+    private int mMaxSize;
+    private int mSize;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @return the process-wide pool used by {@link ImageViewPlus}, bounded to 1/16th of the VM heap
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR));
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param maxSize the maximum size of the pool, in bytes
+     */
+    public BitmapPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return true if the platform supports decoding into an existing Bitmap
+     */
+    public static boolean isReuseSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Removes and returns a pooled Bitmap that can be used as the <code>inBitmap</code> for a decode of the given size and config.
+     *
+     * @param width the decoded width
+     * @param height the decoded height
+     * @param config the decoded config, or null for ARGB_8888
+     * @return a reusable Bitmap, or null if none is pooled
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+
+        final int size = width * height * getBytesPerPixel(config);
+        final boolean flexible = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+        Map.Entry<Integer, LinkedList<Bitmap>> bucket = mBuckets.ceilingEntry(size);
+
+        while (bucket != null && bucket.getKey() <= size * (flexible ? MAX_SIZE_MULTIPLE : 1)) {
+            final Iterator<Bitmap> it = bucket.getValue().iterator();
+
+            while (it.hasNext()) {
+                final Bitmap bitmap = it.next();
+
+                if (flexible || (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config)) {
+                    it.remove();
+                    mOrder.remove(bitmap);
+                    removeBucketIfEmpty(bucket.getKey());
+                    mSize -= bucket.getKey();
+                    mHitCount++;
+                    return bitmap;
+                }
+            }
+
+            bucket = mBuckets.higherEntry(bucket.getKey());
+        }
+
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Offers a Bitmap to the pool. The caller gives up ownership of the Bitmap if it is accepted, and must ensure nothing else is still drawing
+     * it.
+     *
+     * @param bitmap the Bitmap to pool
+     * @return true if the Bitmap was pooled; false if it cannot be reused (immutable, recycled, or too large for the pool)
+     */
+    public boolean put(Bitmap bitmap) {
+        if (bitmap == null || !isReuseSupported() || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return false;
+        }
+
+        final int size = sizeOf(bitmap);
+
+        synchronized (this) {
+            if (size > mMaxSize) {
+                return false;
+            }
+
+            if (mOrder.contains(bitmap)) {
+                return true;
+            }
+
+            LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+            if (bucket == null) {
+                bucket = new LinkedList<Bitmap>();
+                mBuckets.put(size, bucket);
+            }
+
+            bucket.add(bitmap);
+            mOrder.add(bitmap);
+            mSize += size;
+            mPutCount++;
+        }
+
+        trimToSize(maxSize());
+        return true;
+    }
+
+    /**
+     * Recycles pooled Bitmaps, oldest first, until the pool is no larger than the given size
+     *
+     * @param maxSize the target size, in bytes
+     */
+    public synchronized void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            final Iterator<Bitmap> oldest = mOrder.iterator();
+            final Bitmap bitmap = oldest.next();
+            oldest.remove();
+            final int size = sizeOf(bitmap);
+            final LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+            if (bucket != null) {
+                bucket.remove(bitmap);
+                removeBucketIfEmpty(size);
+            }
+
+            mSize -= size;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Recycles every pooled Bitmap
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Trims the pool in response to {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     *
+     * @see DrawableCache#onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+    }
+
+    /**
+     * Empties the pool in response to {@link android.content.ComponentCallbacks#onLowMemory()}
+     */
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    /**
+     * @return the current size of the pool, in bytes
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the maximum size of the pool, in bytes
+     */
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of pooled bitmaps
+     */
+    public synchronized int count() {
+        return mOrder.size();
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final int accesses = mHitCount + mMissCount;
+        final int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return String.format("BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%]", mSize, mMaxSize, mHitCount, mMissCount,
+                mEvictionCount, hitPercent);
+    }
+
+    private void removeBucketIfEmpty(int size) {
+        final LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+        if (bucket != null && bucket.isEmpty()) {
+            mBuckets.remove(size);
+        }
+    }
+
+    /**
+     * @return the number of bytes allocated for the bitmap's pixels, which may be more than it currently uses if it has been reconfigured
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+
+        return 4;
+    }
+}
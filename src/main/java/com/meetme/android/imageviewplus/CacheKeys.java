@@ -0,0 +1,88 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The keys content is cached under: the hash code of an {@link ImageRequest}, by which it is looked up in memory and among the loads in flight,
+ * and the {@link DiskCache} file name. Takes the request's parts as plain objects (a Uri or Bitmap.Config is hashed and printed like any other),
+ * so that it is free of Android dependencies and can be benchmarked on a plain JVM.
+ */
+final class CacheKeys {
+    private CacheKeys() {
+    }
+
+    /**
+     * @return the hash code of a request with the given parts
+     */
+    static int requestHash(Object uri, int resId, int targetWidth, int targetHeight, Object scaleType, boolean exactScale, Object config,
+            Object opaqueConfig, int flags) {
+        int result = uri != null ? uri.hashCode() : 0;
+        result = 31 * result + resId;
+        result = 31 * result + targetWidth;
+        result = 31 * result + targetHeight;
+        result = 31 * result + (scaleType != null ? scaleType.hashCode() : 0);
+        result = 31 * result + (exactScale ? 1 : 0);
+        result = 31 * result + (config != null ? config.hashCode() : 0);
+        result = 31 * result + (opaqueConfig != null ? opaqueConfig.hashCode() : 0);
+        result = 31 * result + flags;
+        return result;
+    }
+
+    /**
+     * @param version a string that changes whenever the content does
+     * @param region whether the entry is a region decode, stored cropped to the visible part
+     * @return the disk cache file name of a thumbnail of the given content, decoded for the given size and config
+     */
+    static String diskKey(Object uri, String version, int targetWidth, int targetHeight, Object scaleType, boolean exactScale, Object config,
+            Object opaqueConfig, boolean region) {
+        final StringBuilder key = new StringBuilder(128);
+        key.append(uri).append('|').append(version).append('|').append(targetWidth).append('x').append(targetHeight).append('|')
+                .append(scaleType).append('|').append(exactScale).append('|').append(config).append('|').append(opaqueConfig);
+
+        if (region) {
+            key.append("|region");
+        }
+
+        return hash(key.toString());
+    }
+
+    /**
+     * @return the hex MD5 of the key, or its hash code if MD5 is unavailable
+     */
+    static String hash(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            final char[] hex = new char[digest.length * 2];
+
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = Character.forDigit((digest[i] >> 4) & 0xf, 16);
+                hex[i * 2 + 1] = Character.forDigit(digest[i] & 0xf, 16);
+            }
+
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(key.hashCode() & 0xffffffffL);
+        } catch (UnsupportedEncodingException e) {
+            return String.valueOf(key.hashCode() & 0xffffffffL);
+        }
+    }
+}
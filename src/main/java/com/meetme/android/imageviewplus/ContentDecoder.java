@@ -0,0 +1,40 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+
+import java.io.IOException;
+
+/**
+ * Decodes content of one MIME type into a Drawable. Register one with {@link ContentRegistry#registerDecoder(String, ContentDecoder)} to
+ * display formats the platform can't decode, or to decode a format differently (e.g., with a hardware decoder).
+ * <p/>
+ * Only applies to Uri content, whose type is reported by its {@link ContentSource} or else recognized by the platform decoder.
+ * {@link #decode(Context, ImageRequest, ContentSource)} is called from a background thread when loading asynchronously, and may be called
+ * concurrently.
+ */
+public interface ContentDecoder {
+    /**
+     * @param request the content to decode, and the size it will be displayed at if {@link ImageRequest#isSized() sized}
+     * @param source opens the content of the request's Uri
+     * @return the decoded drawable, or null to decode the content as if no decoder were registered
+     */
+    public Drawable decode(Context context, ImageRequest request, ContentSource source) throws IOException;
+}
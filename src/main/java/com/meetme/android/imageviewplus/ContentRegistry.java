@@ -0,0 +1,161 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Process-wide registry of the {@link ContentSource}s that open {@link ImageViewPlus} Uri content, keyed by scheme, and the
+ * {@link ContentDecoder}s that decode it, keyed by MIME type.
+ * <p/>
+ * Sources for <code>content</code>, <code>file</code> and <code>android.resource</code> Uris and for raw file paths are registered by default,
+ * and may be replaced. Content with no decoder registered for its type is decoded by the platform. Register sources and decoders before the
+ * content that needs them is loaded, e.g. in <code>Application#onCreate()</code>.
+ */
+public class ContentRegistry {
+    /**
+     * The key of the source for raw file paths, which have no scheme
+     */
+    private static final String NO_SCHEME = "";
+
+    private static ContentRegistry sInstance;
+
+    private final HashMap<String, ContentSource> mSources = new HashMap<String, ContentSource>();
+    private final HashMap<String, ContentDecoder> mDecoders = new HashMap<String, ContentDecoder>();
+
+    public static synchronized ContentRegistry getInstance() {
+        if (sInstance == null) {
+            sInstance = new ContentRegistry();
+        }
+
+        return sInstance;
+    }
+
+    ContentRegistry() {
+        final ContentSource resolverSource = new ContentResolverSource();
+        mSources.put(ContentResolver.SCHEME_CONTENT, resolverSource);
+        mSources.put(ContentResolver.SCHEME_FILE, resolverSource);
+        mSources.put(ContentResolver.SCHEME_ANDROID_RESOURCE, new ResourceSource());
+        mSources.put(NO_SCHEME, new PathSource());
+    }
+
+    /**
+     * @param scheme the Uri scheme, or null for raw file paths
+     * @param source the source that opens Uris of the scheme, or null to remove the scheme's source
+     */
+    public synchronized void registerSource(String scheme, ContentSource source) {
+        if (source != null) {
+            mSources.put(normalize(scheme), source);
+        } else {
+            mSources.remove(normalize(scheme));
+        }
+    }
+
+    /**
+     * @param scheme the Uri scheme, or null for raw file paths
+     * @return the source that opens Uris of the scheme, or null if there is none
+     */
+    public synchronized ContentSource getSource(String scheme) {
+        return mSources.get(normalize(scheme));
+    }
+
+    /**
+     * @param mimeType the MIME type, such as <code>image/webp</code>
+     * @param decoder the decoder for content of the type, or null to remove the type's decoder
+     */
+    public synchronized void registerDecoder(String mimeType, ContentDecoder decoder) {
+        if (decoder != null) {
+            mDecoders.put(normalize(mimeType), decoder);
+        } else {
+            mDecoders.remove(normalize(mimeType));
+        }
+    }
+
+    /**
+     * @return the decoder for content of the MIME type, or null if it is decoded by the platform
+     */
+    public synchronized ContentDecoder getDecoder(String mimeType) {
+        return mDecoders.get(normalize(mimeType));
+    }
+
+    /**
+     * @return true if any decoder is registered, and so the type of content needs to be known before it is decoded
+     */
+    synchronized boolean hasDecoders() {
+        return !mDecoders.isEmpty();
+    }
+
+    /**
+     * Schemes and MIME types are case insensitive
+     */
+    private static String normalize(String key) {
+        return key != null ? key.toLowerCase(Locale.US) : NO_SCHEME;
+    }
+
+    /**
+     * Opens <code>content</code> and <code>file</code> Uris through the ContentResolver
+     */
+    private static class ContentResolverSource implements ContentSource {
+        @Override
+        public String getType(Context context, Uri uri) {
+            return context.getContentResolver().getType(uri);
+        }
+
+        @Override
+        public InputStream openStream(Context context, Uri uri) throws IOException {
+            return context.getContentResolver().openInputStream(uri);
+        }
+
+        @Override
+        public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException {
+            return context.getContentResolver().openAssetFileDescriptor(uri, "r");
+        }
+    }
+
+    /**
+     * Opens Uris that are raw file paths
+     */
+    private static class PathSource implements ContentSource {
+        @Override
+        public String getType(Context context, Uri uri) {
+            return null;
+        }
+
+        @Override
+        public InputStream openStream(Context context, Uri uri) throws IOException {
+            return new FileInputStream(uri.toString());
+        }
+
+        @Override
+        public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException {
+            final ParcelFileDescriptor pfd = ParcelFileDescriptor.open(new File(uri.toString()), ParcelFileDescriptor.MODE_READ_ONLY);
+            return new AssetFileDescriptor(pfd, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
+    }
+}
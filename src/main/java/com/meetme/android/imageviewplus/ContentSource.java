@@ -0,0 +1,51 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens the encoded content of Uris of one scheme, for {@link ImageViewPlus#setImageURI(Uri)}. Register one with
+ * {@link ContentRegistry#registerSource(String, ContentSource)} to load content from schemes the platform can't open (e.g., an encrypted store),
+ * through the same loading, caching and decoding as any other content.
+ * <p/>
+ * Methods may be called from a background thread, and concurrently.
+ */
+public interface ContentSource {
+    /**
+     * @return the MIME type of the content, or null if unknown. Bitmap content of unknown type is recognized by the decoder.
+     */
+    public String getType(Context context, Uri uri);
+
+    /**
+     * @return a new stream of the encoded content, or null if there is none
+     */
+    public InputStream openStream(Context context, Uri uri) throws IOException;
+
+    /**
+     * Opens the content as a file descriptor, from which bitmaps are decoded without copying the encoded data through Java
+     *
+     * @return the descriptor, or null if the content can only be streamed
+     */
+    public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException;
+}
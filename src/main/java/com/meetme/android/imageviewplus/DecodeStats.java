@@ -0,0 +1,152 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * What a single {@link DrawableResolver#resolve} call did, filled in as it goes, and reported to the {@link ImageLoadListener} as each phase
+ * starts and ends. Confined to the thread doing the decode until the result is delivered.
+ */
+final class DecodeStats {
+    /**
+     * Bytes of encoded data read. Stream decodes are counted exactly; descriptor decodes count the length of the source, since the decoder reads
+     * it directly without passing through Java.
+     */
+    long bytesRead;
+
+    /**
+     * Whether the content was decoded straight from a file descriptor rather than through an InputStream
+     */
+    boolean fromDescriptor;
+
+    /**
+     * The config of the decoded Bitmap, or null if the content wasn't decoded to a Bitmap by this library
+     */
+    Bitmap.Config config;
+
+    /**
+     * The request being decoded, and the listener its phases are reported to; or null to report nothing
+     */
+    private final ImageRequest mRequest;
+    private final ImageLoadListener mListener;
+
+    /**
+     * When the I/O and decode phases started, or 0 if they aren't in progress
+     */
+    private long mIoStart;
+    private long mDecodeStart;
+
+    /**
+     * Creates stats that aren't reported to the listener
+     */
+    DecodeStats() {
+        this(null);
+    }
+
+    /**
+     * Creates stats for a decode of the given request, reported to the {@link ImageViewPlus#getLoadListener() listener} registered now
+     */
+    DecodeStats(ImageRequest request) {
+        mRequest = request;
+        mListener = request != null ? ImageViewPlus.getLoadListener() : null;
+    }
+
+    void ioStart() {
+        mIoStart = System.nanoTime();
+
+        if (mListener != null) {
+            mListener.onIoStart(mRequest, mIoStart);
+        }
+    }
+
+    /**
+     * Ends the I/O phase, if it is still in progress, and starts the decode phase unless it already has
+     */
+    void decodeStart() {
+        endIo();
+
+        if (mDecodeStart == 0) {
+            mDecodeStart = System.nanoTime();
+
+            if (mListener != null) {
+                mListener.onDecodeStart(mRequest, mDecodeStart);
+            }
+        }
+    }
+
+    void diskCacheHit() {
+        if (mListener != null) {
+            mListener.onCacheHit(mRequest, ImageLoadListener.CacheTier.DISK, System.nanoTime());
+        }
+    }
+
+    /**
+     * Ends whichever phases are in progress, reporting the decode as failed if nothing was resolved
+     *
+     * @param drawable the resolved content, or null
+     */
+    void finish(Drawable drawable) {
+        endIo();
+
+        final long now = System.nanoTime();
+
+        if (mDecodeStart != 0 && mListener != null) {
+            mListener.onDecodeEnd(mRequest, now, now - mDecodeStart, bytesRead, sizeOf(drawable), config);
+        }
+
+        mDecodeStart = 0;
+
+        if (drawable == null && mListener != null) {
+            mListener.onFailed(mRequest, now);
+        }
+    }
+
+    private void endIo() {
+        if (mIoStart != 0) {
+            final long now = System.nanoTime();
+
+            if (mListener != null) {
+                mListener.onIoEnd(mRequest, now, now - mIoStart, bytesRead);
+            }
+
+            mIoStart = 0;
+        }
+    }
+
+    /**
+     * @return the size of the drawable's decoded pixels, or 0 if unknown
+     */
+    private static long sizeOf(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null ? DrawableCache.sizeOf(bitmap) : 0;
+        } else if (drawable instanceof TiledBitmapDrawable) {
+            return ((TiledBitmapDrawable) drawable).getByteCount();
+        }
+
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeStats{bytesRead=" + bytesRead + ", fromDescriptor=" + fromDescriptor + ", config=" + config + "}";
+    }
+}
@@ -0,0 +1,91 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import com.meetme.imageviewplus.R;
+
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+
+/**
+ * Registry of the default drawables (and the default overlay tint) of every {@link ImageViewPlus}, so that views with the same default resource
+ * share one {@link Drawable.ConstantState} instead of each loading their own. Each view still gets its own Drawable instance; it must
+ * {@link Drawable#mutate() mutate} it before changing it in a way that would otherwise affect every other view.
+ * <p/>
+ * Entries are dropped whenever the resources' configuration changes, since the resources may then resolve differently.
+ */
+final class DefaultDrawables {
+    private static final SparseArray<Drawable.ConstantState> sStates = new SparseArray<Drawable.ConstantState>();
+
+    private static ColorStateList sOverlayTint;
+
+    private static Configuration sConfiguration;
+
+    private DefaultDrawables() {
+    }
+
+    /**
+     * @param res the resources to load the drawable from
+     * @param resId the drawable resource
+     * @return a new Drawable for the resource, sharing its constant state with every other view's
+     */
+    static synchronized Drawable get(Resources res, int resId) {
+        checkConfiguration(res);
+
+        final Drawable.ConstantState state = sStates.get(resId);
+
+        if (state != null) {
+            return state.newDrawable(res);
+        }
+
+        final Drawable drawable = res.getDrawable(resId);
+
+        if (drawable != null && drawable.getConstantState() != null) {
+            sStates.put(resId, drawable.getConstantState());
+        }
+
+        return drawable;
+    }
+
+    /**
+     * @return the shared default overlay tint, {@link R.color#ivp__overlay}
+     */
+    static synchronized ColorStateList getOverlayTint(Resources res) {
+        checkConfiguration(res);
+
+        if (sOverlayTint == null) {
+            // ColorStateLists are immutable, so every view can use the same one
+            sOverlayTint = res.getColorStateList(R.color.ivp__overlay);
+        }
+
+        return sOverlayTint;
+    }
+
+    private static void checkConfiguration(Resources res) {
+        final Configuration configuration = res.getConfiguration();
+
+        if (sConfiguration == null || !sConfiguration.equals(configuration)) {
+            sStates.clear();
+            sOverlayTint = null;
+            sConfiguration = new Configuration(configuration);
+        }
+    }
+}
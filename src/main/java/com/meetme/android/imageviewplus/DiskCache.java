@@ -0,0 +1,493 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Size-bounded LRU cache of downscaled, encoded thumbnails on disk. It sits behind the {@link DrawableCache}: a sized request that misses memory
+ * is decoded from its thumbnail here if one exists, without touching the original content.
+ * <p/>
+ * Entries are keyed by the content Uri, its version and the size and config it was decoded at. The version of a file is its last-modified time;
+ * that of content Uris is the modification time and size their provider reports. Content whose version can't be read isn't cached, since an
+ * edit in place would otherwise never be noticed. Every entry is written to a temporary file and renamed into place, and the access order is
+ * recorded in an append-only journal, so a crash at any point leaves at worst a stray file that is cleaned up the next time the cache is opened.
+ *
+ * @see ImageViewPlus#setDiskCacheEnabled(boolean)
+ */
+public class DiskCache {
+    private static final String TAG = DiskCache.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "imageviewplus";
+    private static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String JOURNAL_HEADER = "imageviewplus.DiskCache 1";
+
+    private static final String[] VERSION_PROJECTION = { MediaStore.MediaColumns.DATE_MODIFIED, MediaStore.MediaColumns.SIZE };
+
+    private static final String CLEAN = "C";
+    private static final String READ = "R";
+    private static final String REMOVE = "D";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Number of redundant journal lines tolerated before the journal is rewritten
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final int JPEG_QUALITY = 90;
+
+    private static DiskCache sInstance;
+
+    private final File mDirectory;
+    private final File mJournalFile;
+    private final long mMaxSize;
+
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private Writer mJournalWriter;
+    private long mSize;
+    private int mRedundantOpCount;
+    private int mTempCount;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @return the process-wide disk cache used by {@link ImageViewPlus}, 20MB in the application's cache directory
+     */
+    public static synchronized DiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DiskCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME), DEFAULT_MAX_SIZE);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param directory the directory to store entries and the journal in; it should not be used for anything else
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public DiskCache(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        mDirectory = directory;
+        mJournalFile = new File(directory, JOURNAL_FILE);
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Builds the cache key for the given request, or null if the request is not cached on disk. Only sized requests for file and content Uris
+     * whose version can be read are cached; resources are part of the application and don't need it. Reading the version of a content Uri queries
+     * its provider, so this must not be called on the UI thread.
+     */
+    static String getKey(Context context, ImageRequest request) {
+        final Uri uri = request.getUri();
+
+        if (uri == null || !request.isSized()) {
+            return null;
+        }
+
+        final String version = getVersion(context, uri);
+
+        if (version == null) {
+            return null;
+        }
+
+        return CacheKeys.diskKey(uri, version, request.getTargetWidth(), request.getTargetHeight(), request.getScaleType(), request.isExactScale(),
+                request.getConfig(), request.getOpaqueConfig(), request.hasFlags(ImageRequest.FLAG_REGION_DECODING));
+    }
+
+    /**
+     * @return a string that changes whenever the content does, or null if there is no way to tell
+     */
+    private static String getVersion(Context context, Uri uri) {
+        final String scheme = uri.getScheme();
+
+        if (ContentResolver.SCHEME_FILE.equals(scheme)) {
+            return String.valueOf(new File(uri.getPath()).lastModified());
+        } else if (scheme == null) {
+            return String.valueOf(new File(uri.toString()).lastModified());
+        } else if (!ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+            return null;
+        }
+
+        Cursor cursor = null;
+
+        try {
+            cursor = context.getContentResolver().query(uri, VERSION_PROJECTION, null, null, null);
+
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+
+            // Providers other than the media store, such as FileProvider, usually only report a size, which doesn't change with every edit
+            final int modified = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            final int size = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE);
+
+            if (modified == -1 || cursor.isNull(modified)) {
+                return null;
+            }
+
+            return cursor.getLong(modified) + ":" + (size != -1 ? cursor.getLong(size) : -1);
+        } catch (Exception e) {
+            // Some providers reject columns they don't have
+            Log.w(TAG, "Unable to read the version of " + uri, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the file holding the entry for the given key, marking it as most recently used.
+     *
+     * @return the entry's file, or null if it is not cached
+     */
+    public synchronized File get(String key) {
+        if (!ensureOpen()) {
+            return null;
+        }
+
+        if (!mEntries.containsKey(key)) {
+            mMissCount++;
+            return null;
+        }
+
+        final File file = new File(mDirectory, key);
+
+        if (!file.exists()) {
+            removeEntry(key);
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        appendJournal(READ, key, -1);
+        return file;
+    }
+
+    /**
+     * Encodes the bitmap and stores it under the given key. Opaque bitmaps are stored as JPEG, others as PNG. This does I/O and must not be called
+     * on the UI thread.
+     *
+     * @return true if the bitmap was stored
+     */
+    public boolean put(String key, Bitmap bitmap) {
+        final File temp;
+
+        synchronized (this) {
+            if (!ensureOpen()) {
+                return false;
+            }
+
+            temp = new File(mDirectory, key + "." + (mTempCount++) + TEMP_SUFFIX);
+        }
+
+        FileOutputStream out = null;
+
+        try {
+            out = new FileOutputStream(temp);
+            final Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+
+            if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                throw new IOException("Unable to compress " + key);
+            }
+
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write entry " + key, e);
+            closeQuietly(out);
+            temp.delete();
+            return false;
+        }
+
+        closeQuietly(out);
+
+        synchronized (this) {
+            final File file = new File(mDirectory, key);
+
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return false;
+            }
+
+            final long size = file.length();
+            final Long previous = mEntries.put(key, size);
+
+            if (previous != null) {
+                mSize -= previous;
+                mRedundantOpCount++;
+            }
+
+            mSize += size;
+            appendJournal(CLEAN, key, size);
+            trimToSize(mMaxSize);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the entry for the given key, if any
+     */
+    public synchronized void remove(String key) {
+        if (ensureOpen() && mEntries.containsKey(key)) {
+            removeEntry(key);
+        }
+    }
+
+    /**
+     * Deletes every entry
+     */
+    public synchronized void clear() {
+        if (ensureOpen()) {
+            trimToSize(-1);
+            rebuildJournal();
+        }
+    }
+
+    /**
+     * @return the current size of the cache, in bytes
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DiskCache[size=%d,maxSize=%d,entries=%d,hits=%d,misses=%d]", mSize, mMaxSize, mEntries.size(), mHitCount,
+                mMissCount);
+    }
+
+    private void trimToSize(long maxSize) {
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+
+        while (mSize > maxSize && it.hasNext()) {
+            final Map.Entry<String, Long> entry = it.next();
+            it.remove();
+            mSize -= entry.getValue();
+            new File(mDirectory, entry.getKey()).delete();
+            appendJournal(REMOVE, entry.getKey(), -1);
+        }
+    }
+
+    private void removeEntry(String key) {
+        final Long size = mEntries.remove(key);
+
+        if (size != null) {
+            mSize -= size;
+        }
+
+        new File(mDirectory, key).delete();
+        appendJournal(REMOVE, key, -1);
+    }
+
+    /**
+     * Opens the cache on first use: replays the journal, then deletes anything on disk the journal doesn't account for.
+     *
+     * @return true if the cache is usable
+     */
+    private boolean ensureOpen() {
+        if (mJournalWriter != null) {
+            return true;
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            return false;
+        }
+
+        if (mJournalFile.exists()) {
+            try {
+                readJournal();
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding corrupt journal", e);
+                mEntries.clear();
+            }
+        }
+
+        mSize = 0;
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            final Map.Entry<String, Long> entry = it.next();
+            final File file = new File(mDirectory, entry.getKey());
+
+            if (file.length() != entry.getValue()) {
+                // Missing or incomplete
+                file.delete();
+                it.remove();
+            } else {
+                mSize += entry.getValue();
+            }
+        }
+
+        final String[] names = mDirectory.list();
+
+        if (names != null) {
+            final Set<String> known = new HashSet<String>(mEntries.keySet());
+            known.add(JOURNAL_FILE);
+
+            for (String name : names) {
+                if (!known.contains(name)) {
+                    new File(mDirectory, name).delete();
+                }
+            }
+        }
+
+        return rebuildJournal();
+    }
+
+    private void readJournal() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile), "US-ASCII"));
+
+        try {
+            if (!JOURNAL_HEADER.equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+
+                if (CLEAN.equals(parts[0]) && parts.length == 3) {
+                    try {
+                        mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    } catch (NumberFormatException e) {
+                        // A partially written last line; everything before it is still valid
+                        break;
+                    }
+                } else if (READ.equals(parts[0]) && parts.length == 2) {
+                    mEntries.get(parts[1]);
+                } else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+                    mEntries.remove(parts[1]);
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Writes a compact journal of the current entries to a temporary file, and atomically renames it over the old journal.
+     */
+    private boolean rebuildJournal() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+
+        final File temp = new File(mDirectory, JOURNAL_FILE_TEMP);
+        Writer writer = null;
+
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "US-ASCII"));
+            writer.write(JOURNAL_HEADER);
+            writer.write('\n');
+
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + '\n');
+            }
+
+            writer.close();
+            writer = null;
+
+            if (!temp.renameTo(mJournalFile)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+
+            mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mJournalFile, true), "US-ASCII"));
+            mRedundantOpCount = 0;
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write journal", e);
+            closeQuietly(writer);
+            return false;
+        }
+    }
+
+    private void appendJournal(String op, String key, long size) {
+        if (mJournalWriter == null) {
+            return;
+        }
+
+        try {
+            mJournalWriter.write(size >= 0 ? op + " " + key + " " + size + '\n' : op + " " + key + '\n');
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to append to journal", e);
+        }
+
+        if (!CLEAN.equals(op) && ++mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOpCount >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
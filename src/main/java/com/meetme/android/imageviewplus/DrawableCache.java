@@ -0,0 +1,324 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide, byte-size bounded LRU cache of decoded {@link ImageViewPlus} content, keyed by {@link ImageRequest} (the content plus the size and
+ * config it was decoded at).
+ * <p/>
+ * Only bitmap content is cached. Each {@link #get(ImageRequest)} returns a new Drawable sharing the cached Bitmap, so that views don't share
+ * bounds, callbacks or color filters. Entries can be {@link #pin(ImageRequest) pinned} while they are on screen so they are never evicted. A
+ * {@link RefCountedBitmapDrawable} is referenced for as long as it is cached.
+ * <p/>
+ * The cache does not register for memory callbacks itself; forward {@link #onTrimMemory(int)} and {@link #onLowMemory()} from the application.
+ *
+ * @see ImageViewPlus#setMemoryCacheEnabled(boolean)
+ */
+public class DrawableCache {
+    /**
+     * Fraction of the VM heap used by the default cache
+     */
+    private static final int DEFAULT_HEAP_DIVISOR = 8;
+
+    private static DrawableCache sInstance;
+
+    private final LinkedHashMap<ImageRequest, Entry> mMap = new LinkedHashMap<ImageRequest, Entry>(16, 0.75f, true);
+
+    private int mMaxSize;
+    private int mSize;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @return the process-wide cache used by {@link ImageViewPlus}, bounded to 1/8th of the VM heap
+     */
+    public static synchronized DrawableCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DrawableCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_DIVISOR));
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public DrawableCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns a new Drawable for the cached content, or null if it is not cached (or its Bitmap has since been recycled).
+     *
+     * @param key the request the content was decoded for
+     * @return a new Drawable sharing the cached Bitmap, or null
+     */
+    public synchronized Drawable get(ImageRequest key) {
+        final Entry entry = mMap.get(key);
+
+        if (entry != null) {
+            if (!entry.bitmap.isRecycled()) {
+                mHitCount++;
+                return entry.state.newDrawable();
+            }
+
+            // Recycled behind our back; it's useless now
+            remove(key);
+        }
+
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * @return true if the content is cached, without counting as a hit or miss or refreshing the entry
+     */
+    public synchronized boolean contains(ImageRequest key) {
+        // Unlike get(), containsKey() leaves the access order alone
+        return mMap.containsKey(key);
+    }
+
+    /**
+     * Caches the given drawable, if it is bitmap content. Any existing entry for the key is replaced (keeping its pins).
+     *
+     * @param key the request the content was decoded for
+     * @param drawable the decoded content
+     * @return true if the drawable was cached
+     */
+    public boolean put(ImageRequest key, Drawable drawable) {
+        if (!(drawable instanceof BitmapDrawable) || drawable.getConstantState() == null) {
+            return false;
+        }
+
+        final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+
+        final RefCountedBitmapDrawable ref = drawable instanceof RefCountedBitmapDrawable ? (RefCountedBitmapDrawable) drawable : null;
+        final Entry entry = new Entry(bitmap, drawable.getConstantState(), ref, sizeOf(bitmap));
+
+        if (ref != null) {
+            ref.acquire();
+        }
+
+        synchronized (this) {
+            mPutCount++;
+            mSize += entry.size;
+
+            final Entry previous = mMap.put(key, entry);
+
+            if (previous != null) {
+                mSize -= previous.size;
+                entry.pins = previous.pins;
+                previous.release();
+            }
+        }
+
+        trimToSize(maxSize());
+        return true;
+    }
+
+    /**
+     * Removes the entry for the given key, even if it is pinned
+     */
+    public synchronized void remove(ImageRequest key) {
+        final Entry entry = mMap.remove(key);
+
+        if (entry != null) {
+            mSize -= entry.size;
+            entry.release();
+        }
+    }
+
+    /**
+     * Prevents the entry for the given key from being evicted until a matching call to {@link #unpin(ImageRequest)}. Pins are counted, so each
+     * view showing the content may pin it independently. Does nothing if the key is not cached.
+     */
+    public synchronized void pin(ImageRequest key) {
+        final Entry entry = mMap.get(key);
+
+        if (entry != null) {
+            entry.pins++;
+        }
+    }
+
+    /**
+     * Releases a pin taken with {@link #pin(ImageRequest)}
+     */
+    public synchronized void unpin(ImageRequest key) {
+        final Entry entry = mMap.get(key);
+
+        if (entry != null && entry.pins > 0) {
+            entry.pins--;
+        }
+    }
+
+    /**
+     * Evicts unpinned entries, least recently used first, until the cache is no larger than the given size (or only pinned entries remain).
+     *
+     * @param maxSize the target size, in bytes
+     */
+    public synchronized void trimToSize(int maxSize) {
+        final Iterator<Map.Entry<ImageRequest, Entry>> it = mMap.entrySet().iterator();
+
+        while (mSize > maxSize && it.hasNext()) {
+            final Entry entry = it.next().getValue();
+
+            if (entry.pins == 0) {
+                it.remove();
+                mSize -= entry.size;
+                mEvictionCount++;
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Evicts every unpinned entry
+     */
+    public void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Changes the maximum size of the cache, evicting entries if needed
+     *
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        synchronized (this) {
+            mMaxSize = maxSize;
+        }
+
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Trims the cache in response to {@link android.content.ComponentCallbacks2#onTrimMemory(int)}: everything unpinned is evicted once the app
+     * is in the background, and half of the cache is freed while the app is running but memory is low.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+    }
+
+    /**
+     * Evicts every unpinned entry in response to {@link android.content.ComponentCallbacks#onLowMemory()}
+     */
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    /**
+     * @return the current size of the cache, in bytes
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the maximum size of the cache, in bytes
+     */
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int count() {
+        return mMap.size();
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final int accesses = mHitCount + mMissCount;
+        final int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return String.format("DrawableCache[size=%d,maxSize=%d,hits=%d,misses=%d,evictions=%d,hitRate=%d%%]", mSize, mMaxSize, mHitCount,
+                mMissCount, mEvictionCount, hitPercent);
+    }
+
+    /**
+     * @return the number of bytes used by the bitmap's pixels
+     */
+    static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static class Entry {
+        final Bitmap bitmap;
+        final Drawable.ConstantState state;
+        final RefCountedBitmapDrawable ref;
+        final int size;
+        int pins;
+
+        Entry(Bitmap bitmap, Drawable.ConstantState state, RefCountedBitmapDrawable ref, int size) {
+            this.bitmap = bitmap;
+            this.state = state;
+            this.ref = ref;
+            this.size = size;
+        }
+
+        void release() {
+            if (ref != null) {
+                ref.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,1229 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import com.meetme.android.imageviewplus.ImageViewPlus.PlusScaleType;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Movie;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resolves the content of an {@link ImageViewPlus} (either a resource id or a Uri) into a {@link Drawable}.
+ * <p/>
+ * This holds no reference to the view, so it is safe to call from a background thread.
+ * <p/>
+ * Uri content is opened through the {@link ContentSource} registered for its scheme, and decoded by the {@link ContentDecoder} registered for
+ * its type, if any. File and content Uris are decoded straight from their file descriptor where possible, so the encoded data never passes
+ * through a Java buffer.
+ */
+final class DrawableResolver {
+    private static final String TAG = DrawableResolver.class.getSimpleName();
+
+    /**
+     * How much smaller than the full decode a progressive preview is
+     */
+    private static final int PREVIEW_DIVISOR = 8;
+
+    /**
+     * How far an embedded thumbnail's aspect ratio may be from the image's for it to be used as a preview
+     */
+    private static final float PREVIEW_ASPECT_TOLERANCE = 0.02f;
+
+    /**
+     * How much of a stream is kept while recognizing its type, so a registered decoder can read it again from the start
+     */
+    private static final int SNIFF_LIMIT = 64 * 1024;
+
+    /**
+     * The largest Bitmap dimension that can be drawn in one piece; see {@link #setMaxTextureSize(int)}
+     */
+    private static volatile int sMaxTextureSize = 2048;
+
+    private DrawableResolver() {
+    }
+
+    /**
+     * Sets the largest width or height a single Bitmap may have before {@link ImageRequest#FLAG_TILED_DECODING tiled} requests are split into
+     * tiles. Defaults to 2048, the smallest maximum texture size of hardware accelerated devices.
+     */
+    static void setMaxTextureSize(int maxTextureSize) {
+        if (maxTextureSize > 0) {
+            sMaxTextureSize = maxTextureSize;
+        }
+    }
+
+    /**
+     * Reads and decodes the given content. If the request is {@link ImageRequest#isSized() sized}, bitmap content is downsampled to the target size
+     * while decoding.
+     *
+     * @param context the context used to open the content
+     * @param request the content to resolve
+     * @param pool the pool to take a reusable decode target from, or null to always allocate a new Bitmap
+     * @param diskCache the disk cache to read and write downscaled thumbnails, or null
+     * @param stats receives what the decode did
+     * @return the decoded drawable, or null if the content could not be read
+     */
+    static Drawable resolve(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache,
+            final DecodeStats stats) {
+        stats.ioStart();
+
+        final Drawable drawable = resolveInternal(context, request, pool, diskCache, stats);
+        stats.finish(drawable);
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Resolved " + request + ": " + stats);
+        }
+
+        return drawable;
+    }
+
+    /**
+     * Quickly decodes a low resolution preview of sized content: the image's embedded EXIF thumbnail if it is a local file and has one, or else a
+     * heavily subsampled decode. The preview reports the same intrinsic size as the full decode will, so swapping one for the other doesn't
+     * change the view's layout.
+     *
+     * @param context the context used to open the content
+     * @param request the full content request
+     * @param stats receives what the decode did
+     * @return the preview, or null if the request isn't sized or the content could not be read
+     */
+    static Drawable resolvePreview(final Context context, final ImageRequest request, final DecodeStats stats) {
+        if (!request.isSized()) {
+            return null;
+        }
+
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decode(context, request, opts, stats);
+
+        final int srcWidth = opts.outWidth;
+        final int srcHeight = opts.outHeight;
+
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+
+        final float scale = computeScale(srcWidth, srcHeight, request.getTargetWidth(), request.getTargetHeight(), request.getScaleType());
+        final int sampleSize = ScaleMath.computeSampleSize(scale);
+        final Rect region = isRegionSupported() && request.hasFlags(ImageRequest.FLAG_REGION_DECODING)
+                ? computeVisibleRegion(request, srcWidth, srcHeight, scale)
+                : null;
+        final int fullWidth;
+        final int fullHeight;
+
+        if (region != null) {
+            // As decodeRegion() decodes it, leaving the exact scale to the view's matrix
+            fullWidth = ScaleMath.computeDecodedSize(region.width(), sampleSize, 0, 0);
+            fullHeight = ScaleMath.computeDecodedSize(region.height(), sampleSize, 0, 0);
+        } else {
+            int density = 0;
+            int targetDensity = 0;
+
+            if (request.isExactScale() && scale < 1f) {
+                // As decodeSampled() scales it
+                density = ScaleMath.computeDecodedSize(srcWidth, sampleSize, 0, 0);
+                targetDensity = Math.max(1, Math.round(srcWidth * scale));
+            }
+
+            fullWidth = ScaleMath.computeDecodedSize(srcWidth, sampleSize, density, targetDensity);
+            fullHeight = ScaleMath.computeDecodedSize(srcHeight, sampleSize, density, targetDensity);
+        }
+
+        Bitmap bitmap = decodeExifThumbnail(request, srcWidth, srcHeight, stats);
+
+        if (bitmap == null) {
+            opts.inJustDecodeBounds = false;
+            opts.inSampleSize = ScaleMath.computeSampleSize(scale / PREVIEW_DIVISOR);
+
+            final Bitmap.Config config = chooseConfig(request, opts.outMimeType);
+
+            if (config != null) {
+                opts.inPreferredConfig = config;
+            }
+
+            bitmap = decode(context, request, opts, stats);
+        }
+
+        if (bitmap == null) {
+            return null;
+        }
+
+        if (region != null) {
+            bitmap = cropPreview(bitmap, region, srcWidth, srcHeight);
+        }
+
+        stats.config = bitmap.getConfig();
+
+        // Report exactly the size of the full decode, which a density can only approximate, so swapping it in doesn't request another layout
+        final RefCountedBitmapDrawable drawable = new RefCountedBitmapDrawable(context.getResources(), bitmap, null);
+        drawable.setIntrinsicSize(fullWidth, fullHeight);
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Resolved preview of " + request + ": " + stats);
+        }
+
+        return drawable;
+    }
+
+    /**
+     * Crops a preview of the whole content to the region that the full decode will contain
+     */
+    private static Bitmap cropPreview(final Bitmap preview, final Rect region, final int srcWidth, final int srcHeight) {
+        final float scaleX = (float) preview.getWidth() / srcWidth;
+        final float scaleY = (float) preview.getHeight() / srcHeight;
+        final int left = Math.min(preview.getWidth() - 1, (int) (region.left * scaleX));
+        final int top = Math.min(preview.getHeight() - 1, (int) (region.top * scaleY));
+        final int width = Math.max(1, Math.min(preview.getWidth() - left, Math.round(region.width() * scaleX)));
+        final int height = Math.max(1, Math.min(preview.getHeight() - top, Math.round(region.height() * scaleY)));
+        final Bitmap cropped = Bitmap.createBitmap(preview, left, top, width, height);
+
+        if (cropped != preview) {
+            preview.recycle();
+        }
+
+        return cropped;
+    }
+
+    private static Drawable resolveInternal(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache,
+            final DecodeStats stats) {
+        final Resources rsrc = context.getResources();
+
+        if (rsrc == null) {
+            return null;
+        }
+
+        if (request.getUri() != null && ContentRegistry.getInstance().hasDecoders()) {
+            final Drawable decoded = decodeRegistered(context, request, stats);
+
+            if (decoded != null) {
+                return decoded;
+            }
+        }
+
+        if (request.hasFlags(ImageRequest.FLAG_ANIMATED_IMAGES)) {
+            final Drawable animated = decodeAnimated(context, request, stats);
+
+            if (animated != null) {
+                return animated;
+            }
+        }
+
+        final Uri uri = request.getUri();
+        final int resId = request.getResource();
+
+        if (request.isSized()) {
+            final String diskKey = diskCache != null ? DiskCache.getKey(context, request) : null;
+            Bitmap bitmap = null;
+
+            if (diskKey != null) {
+                final File file = diskCache.get(diskKey);
+
+                if (file != null) {
+                    bitmap = decodeThumbnail(context, file, request, pool, stats);
+
+                    if (bitmap != null) {
+                        stats.diskCacheHit();
+                    }
+                }
+            }
+
+            if (bitmap == null && isRegionSupported() && request.hasFlags(ImageRequest.FLAG_REGION_DECODING)) {
+                bitmap = decodeRegion(context, request, stats);
+
+                if (bitmap != null && diskKey != null) {
+                    // Only the visible part, which is all a view with the same request shows
+                    diskCache.put(diskKey, bitmap);
+                }
+            }
+
+            if (bitmap == null && isRegionSupported() && request.hasFlags(ImageRequest.FLAG_TILED_DECODING)) {
+                final Drawable tiled = decodeTiled(context, request, stats);
+
+                if (tiled != null) {
+                    return tiled;
+                }
+            }
+
+            if (bitmap == null) {
+                bitmap = decodeSampled(context, request, pool, stats);
+
+                if (bitmap != null && diskKey != null) {
+                    diskCache.put(diskKey, bitmap);
+                }
+            }
+
+            if (bitmap != null) {
+                stats.config = bitmap.getConfig();
+
+                // We decoded it ourselves, so it's safe to reference count (and eventually free) it
+                return new RefCountedBitmapDrawable(rsrc, bitmap, pool);
+            }
+
+            // Not bitmap content (e.g., an XML drawable); fall back to the full decode below
+        } else if (isRegionSupported() && request.hasFlags(ImageRequest.FLAG_TILED_DECODING)) {
+            final Drawable tiled = decodeTiled(context, request, stats);
+
+            if (tiled != null) {
+                return tiled;
+            }
+        }
+
+        Drawable d = null;
+        stats.decodeStart();
+
+        if (resId != 0) {
+            try {
+                d = rsrc.getDrawable(resId);
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to find resource: " + resId, e);
+            }
+        } else if (uri != null) {
+            if (ContentRegistry.getInstance().getSource(uri.getScheme()) instanceof ResourceSource) {
+                try {
+                    // Load drawable through Resources, to get the source density information (and support XML drawables)
+                    final ResourceSource.Resource resource = ResourceSource.resolve(context, uri);
+                    d = resource.resources.getDrawable(resource.id);
+                } catch (Exception e) {
+                    Log.w(TAG, "Unable to open content: " + uri, e);
+                }
+            } else {
+                d = decodeUnsized(context, request, pool, stats);
+            }
+
+            if (d == null) {
+                Log.w(TAG, "resolveUri failed on bad bitmap uri: " + uri);
+            }
+        }
+
+        return d;
+    }
+
+    /**
+     * Decodes Uri content at its full size: straight from its descriptor into a Bitmap if it has one, or else from its stream
+     *
+     * @return the decoded drawable, or null if the content could not be read
+     */
+    private static Drawable decodeUnsized(final Context context, final ImageRequest request, final BitmapPool pool, final DecodeStats stats) {
+        final AssetFileDescriptor afd = openDescriptor(context, request);
+
+        if (afd != null) {
+            try {
+                final Bitmap bitmap = decodeDescriptor(afd, new BitmapFactory.Options(), stats);
+
+                if (bitmap == null) {
+                    return null;
+                }
+
+                stats.config = bitmap.getConfig();
+                return new RefCountedBitmapDrawable(context.getResources(), bitmap, pool);
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to decode content from descriptor: " + request, e);
+                return null;
+            } finally {
+                closeQuietly(afd);
+            }
+        }
+
+        CountingInputStream in = null;
+
+        try {
+            final InputStream source = openStream(context, request);
+
+            if (source == null) {
+                return null;
+            }
+
+            in = new CountingInputStream(source);
+            return Drawable.createFromStream(in, null);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to open content: " + request, e);
+            return null;
+        } finally {
+            if (in != null) {
+                stats.bytesRead += in.getCount();
+            }
+
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Decodes bitmap content in two passes: the first reads only the bounds, the second decodes with an <code>inSampleSize</code> (and, if
+     * requested, a density-based exact scale) chosen from the target size and scale type.
+     *
+     * @return the decoded bitmap, or null if the content is not a bitmap or could not be read
+     */
+    private static Bitmap decodeSampled(final Context context, final ImageRequest request, final BitmapPool pool, final DecodeStats stats) {
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decode(context, request, opts, stats);
+
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return null;
+        }
+
+        final int srcWidth = opts.outWidth;
+        final float scale = computeScale(srcWidth, opts.outHeight, request.getTargetWidth(), request.getTargetHeight(), request.getScaleType());
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = ScaleMath.computeSampleSize(scale);
+        opts.inScaled = false;
+
+        final Bitmap.Config config = chooseConfig(request, opts.outMimeType);
+
+        if (config != null) {
+            opts.inPreferredConfig = config;
+        }
+
+        if (request.isExactScale() && scale < 1f) {
+            // Let the decoder scale the subsampled image the rest of the way by treating the widths as densities
+            opts.inScaled = true;
+            opts.inDensity = ScaleMath.computeDecodedSize(srcWidth, opts.inSampleSize, 0, 0);
+            opts.inTargetDensity = Math.max(1, Math.round(srcWidth * scale));
+        }
+
+        if (pool != null && BitmapPool.isReuseSupported() && !isHardware(config)) {
+            setReusableBitmap(opts, pool, srcWidth, opts.outHeight);
+        }
+
+        Bitmap bitmap = decode(context, request, opts, stats);
+
+        if (bitmap == null && opts.inBitmap != null) {
+            // The decoder rejected the pooled bitmap (e.g., unsupported format before KitKat); give it back and decode into a new one
+            pool.put(opts.inBitmap);
+            opts.inBitmap = null;
+            bitmap = decode(context, request, opts, stats);
+        }
+
+        if (bitmap != null) {
+            // The decoded size is already the display size; don't let BitmapDrawable scale it again
+            bitmap.setDensity(context.getResources().getDisplayMetrics().densityDpi);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Decodes Uri content with the {@link ContentDecoder} registered for its type, if any
+     *
+     * @return the decoded drawable, or null if there is no decoder for the content or it declined to decode it
+     */
+    private static Drawable decodeRegistered(final Context context, final ImageRequest request, final DecodeStats stats) {
+        final ContentRegistry registry = ContentRegistry.getInstance();
+        final Uri uri = request.getUri();
+        final ContentSource source = registry.getSource(uri.getScheme());
+
+        if (source == null) {
+            return null;
+        }
+
+        String mimeType = source.getType(context, uri);
+        CountingInputStream counted = null;
+        InputStream sniffed = null;
+
+        try {
+            if (mimeType == null) {
+                // Recognize the type from the start of the stream, and keep it so the decoder doesn't need to open the source again
+                final InputStream stream = source.openStream(context, uri);
+
+                if (stream == null) {
+                    return null;
+                }
+
+                counted = new CountingInputStream(stream);
+                sniffed = new BufferedInputStream(counted, SNIFF_LIMIT);
+                sniffed.mark(SNIFF_LIMIT);
+
+                final BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inJustDecodeBounds = true;
+                BitmapFactory.decodeStream(sniffed, null, opts);
+                mimeType = opts.outMimeType;
+
+                try {
+                    sniffed.reset();
+                } catch (IOException e) {
+                    // Read past what was kept; the decoder opens the source again
+                    closeQuietly(sniffed);
+                    sniffed = null;
+                }
+            }
+
+            final ContentDecoder decoder = mimeType != null ? registry.getDecoder(mimeType) : null;
+
+            if (decoder == null) {
+                return null;
+            }
+
+            stats.decodeStart();
+
+            try {
+                return decoder.decode(context, request, sniffed != null ? new SniffedSource(source, uri, sniffed) : source);
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to decode content with " + decoder + ": " + request, e);
+                return null;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to open content: " + request, e);
+            return null;
+        } finally {
+            if (counted != null) {
+                stats.bytesRead += counted.getCount();
+            }
+
+            closeQuietly(sniffed);
+            closeQuietly(counted);
+        }
+    }
+
+    /**
+     * Decodes an animated GIF, and renders its first frame subsampled to the target size if the request is sized
+     *
+     * @return the animated drawable, or null if the content is not an animated GIF or could not be read
+     */
+    private static Drawable decodeAnimated(final Context context, final ImageRequest request, final DecodeStats stats) {
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decode(context, request, opts, stats);
+
+        if (!"image/gif".equals(opts.outMimeType)) {
+            return null;
+        }
+
+        // Only a GIF is read whole, since its frames are decoded from the encoded data for as long as it plays
+        final byte[] data = readFully(context, request, stats);
+
+        if (data == null) {
+            return null;
+        }
+
+        stats.decodeStart();
+        final Movie movie = Movie.decodeByteArray(data, 0, data.length);
+
+        if (movie == null || movie.duration() <= 0 || movie.width() <= 0 || movie.height() <= 0) {
+            // A single frame; decode it like any other image
+            return null;
+        }
+
+        final int width = movie.width();
+        final int height = movie.height();
+        final float targetScale = request.isSized()
+                ? computeScale(width, height, request.getTargetWidth(), request.getTargetHeight(), request.getScaleType())
+                : 1f;
+        final int sampleSize = ScaleMath.computeSampleSize(targetScale);
+        final float scale = 1f / sampleSize;
+        final Bitmap.Config requested = chooseConfig(request, opts.outMimeType);
+        final Bitmap.Config config = requested != null && !isHardware(requested) ? requested : Bitmap.Config.ARGB_8888;
+
+        final Bitmap firstFrame = Bitmap.createBitmap(Math.max(1, width / sampleSize), Math.max(1, height / sampleSize), config);
+        final Canvas canvas = new Canvas(firstFrame);
+        canvas.scale(scale, scale);
+        movie.setTime(0);
+        movie.draw(canvas, 0, 0);
+
+        stats.config = config;
+        return new AnimatedGifDrawable(data, movie, firstFrame, scale, config);
+    }
+
+    /**
+     * @return the encoded content, or null if it could not be read
+     */
+    private static byte[] readFully(final Context context, final ImageRequest request, final DecodeStats stats) {
+        CountingInputStream in = null;
+
+        try {
+            final InputStream source = openStream(context, request);
+
+            if (source == null) {
+                return null;
+            }
+
+            in = new CountingInputStream(source);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[16 * 1024];
+            int read;
+
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read content: " + request, e);
+            return null;
+        } finally {
+            if (in != null) {
+                stats.bytesRead += in.getCount();
+            }
+
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return true if {@link BitmapRegionDecoder} is available (API 10)
+     */
+    private static boolean isRegionSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
+    /**
+     * Decodes only the part of the content that a <code>CENTER_CROP</code> or <code>TOP_CROP</code> view will show, subsampled to the target size.
+     * The exact scale, if requested, is left to the view's matrix.
+     *
+     * @return the decoded region, or null if the content is not a bitmap, the whole of it is visible, or it could not be read
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static Bitmap decodeRegion(final Context context, final ImageRequest request, final DecodeStats stats) {
+        final PlusScaleType scaleType = request.getScaleType();
+
+        if (scaleType != PlusScaleType.CENTER_CROP && scaleType != PlusScaleType.TOP_CROP) {
+            return null;
+        }
+
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decode(context, request, opts, stats);
+
+        final int srcWidth = opts.outWidth;
+        final int srcHeight = opts.outHeight;
+
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+
+        final float scale = computeScale(srcWidth, srcHeight, request.getTargetWidth(), request.getTargetHeight(), scaleType);
+        final Rect region = computeVisibleRegion(request, srcWidth, srcHeight, scale);
+
+        if (region == null) {
+            return null;
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = ScaleMath.computeSampleSize(scale);
+        setRegionConfig(opts, request);
+
+        AssetFileDescriptor afd = null;
+        BitmapRegionDecoder decoder = null;
+
+        try {
+            afd = openDescriptor(context, request);
+            decoder = newRegionDecoder(context, request, afd, stats);
+            stats.decodeStart();
+
+            final Bitmap bitmap = decoder != null ? decoder.decodeRegion(region, opts) : null;
+
+            if (bitmap != null) {
+                bitmap.setDensity(context.getResources().getDisplayMetrics().densityDpi);
+            }
+
+            return bitmap;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to decode region of content: " + request, e);
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+
+            closeQuietly(afd);
+        }
+    }
+
+    /**
+     * @param scale the factor the content is scaled by to fill the request's target size
+     * @return the part of the content that a <code>CENTER_CROP</code> or <code>TOP_CROP</code> view of the request's target size shows, or null if
+     * the view's scale type doesn't crop or it shows all of the content
+     */
+    private static Rect computeVisibleRegion(final ImageRequest request, final int srcWidth, final int srcHeight, final float scale) {
+        final PlusScaleType scaleType = request.getScaleType();
+
+        if (scaleType != PlusScaleType.CENTER_CROP && scaleType != PlusScaleType.TOP_CROP) {
+            return null;
+        }
+
+        final int width = Math.min(srcWidth, Math.round(request.getTargetWidth() / scale));
+        final int height = Math.min(srcHeight, Math.round(request.getTargetHeight() / scale));
+
+        if (width >= srcWidth && height >= srcHeight) {
+            return null;
+        }
+
+        final int left = (srcWidth - width) / 2;
+        final int top = scaleType == PlusScaleType.TOP_CROP ? 0 : (srcHeight - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    /**
+     * Decodes content whose (subsampled) size is larger than the {@link #setMaxTextureSize(int) maximum texture size} as a grid of tiles that
+     * each fit
+     *
+     * @return the tiled drawable, or null if the content is not a bitmap, fits in a single Bitmap, or could not be read
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static Drawable decodeTiled(final Context context, final ImageRequest request, final DecodeStats stats) {
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decode(context, request, opts, stats);
+
+        final int srcWidth = opts.outWidth;
+        final int srcHeight = opts.outHeight;
+
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+
+        final float targetScale = request.isSized()
+                ? computeScale(srcWidth, srcHeight, request.getTargetWidth(), request.getTargetHeight(), request.getScaleType())
+                : 1f;
+        final int sampleSize = ScaleMath.computeSampleSize(targetScale);
+        final int width = ScaleMath.computeDecodedSize(srcWidth, sampleSize, 0, 0);
+        final int height = ScaleMath.computeDecodedSize(srcHeight, sampleSize, 0, 0);
+        final int maxSize = sMaxTextureSize;
+
+        if (width <= maxSize && height <= maxSize) {
+            return null;
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sampleSize;
+        setRegionConfig(opts, request);
+
+        // Tile edges land on multiples of the sample size, so each tile's position in the decoded image is exact
+        final int tileSize = maxSize * sampleSize;
+        final int columns = (srcWidth + tileSize - 1) / tileSize;
+        final int rows = (srcHeight + tileSize - 1) / tileSize;
+        final Bitmap[] tiles = new Bitmap[columns * rows];
+        final int[] lefts = new int[tiles.length];
+        final int[] tops = new int[tiles.length];
+
+        AssetFileDescriptor afd = null;
+        BitmapRegionDecoder decoder = null;
+        boolean complete = false;
+
+        try {
+            afd = openDescriptor(context, request);
+            decoder = newRegionDecoder(context, request, afd, stats);
+
+            if (decoder == null) {
+                return null;
+            }
+
+            stats.decodeStart();
+
+            for (int i = 0; i < tiles.length; i++) {
+                final int left = (i % columns) * tileSize;
+                final int top = (i / columns) * tileSize;
+                final Rect rect = new Rect(left, top, Math.min(left + tileSize, srcWidth), Math.min(top + tileSize, srcHeight));
+
+                tiles[i] = decoder.decodeRegion(rect, opts);
+
+                if (tiles[i] == null) {
+                    return null;
+                }
+
+                lefts[i] = left / sampleSize;
+                tops[i] = top / sampleSize;
+            }
+
+            complete = true;
+            stats.config = tiles[0].getConfig();
+            return new TiledBitmapDrawable(tiles, lefts, tops, width, height);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to decode tiles of content: " + request, e);
+            return null;
+        } finally {
+            if (!complete) {
+                for (Bitmap tile : tiles) {
+                    if (tile != null) {
+                        tile.recycle();
+                    }
+                }
+            }
+
+            if (decoder != null) {
+                decoder.recycle();
+            }
+
+            closeQuietly(afd);
+        }
+    }
+
+    /**
+     * Region decodes can't target <code>HARDWARE</code> Bitmaps, so those fall back to the decoder's default
+     */
+    private static void setRegionConfig(final BitmapFactory.Options opts, final ImageRequest request) {
+        final Bitmap.Config config = chooseConfig(request, opts.outMimeType);
+
+        if (config != null && !isHardware(config)) {
+            opts.inPreferredConfig = config;
+        }
+    }
+
+    /**
+     * Opens a region decoder on the content, from the given descriptor if it starts at the beginning of a file, or else from a stream. The
+     * descriptor must stay open until the decoder is recycled.
+     *
+     * @return the decoder, or null if the content can't be opened
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static BitmapRegionDecoder newRegionDecoder(final Context context, final ImageRequest request, final AssetFileDescriptor afd,
+            final DecodeStats stats) throws IOException {
+        if (afd != null && afd.getStartOffset() == 0) {
+            final long length = afd.getLength();
+            stats.bytesRead += length != AssetFileDescriptor.UNKNOWN_LENGTH ? length : afd.getParcelFileDescriptor().getStatSize();
+            stats.fromDescriptor = true;
+            return BitmapRegionDecoder.newInstance(afd.getFileDescriptor(), false);
+        }
+
+        // One into the middle of a file is read from its start offset, rather than opening the content again
+        final InputStream source = afd != null ? afd.createInputStream() : openStream(context, request);
+
+        if (source == null) {
+            return null;
+        }
+
+        // The decoder reads the whole stream up front, so it can be closed straight away
+        final CountingInputStream in = new CountingInputStream(source);
+
+        try {
+            return BitmapRegionDecoder.newInstance(in, false);
+        } finally {
+            stats.bytesRead += in.getCount();
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Decodes the EXIF thumbnail of a local JPEG, if it has one with the same aspect ratio as the image
+     *
+     * @return the thumbnail, or null
+     */
+    private static Bitmap decodeExifThumbnail(final ImageRequest request, final int srcWidth, final int srcHeight, final DecodeStats stats) {
+        final Uri uri = request.getUri();
+
+        if (request.getResource() != 0 || uri == null) {
+            return null;
+        }
+
+        final String path;
+
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            path = uri.getPath();
+        } else if (uri.getScheme() == null) {
+            path = uri.toString();
+        } else {
+            return null;
+        }
+
+        try {
+            final ExifInterface exif = new ExifInterface(path);
+            final byte[] thumbnail = exif.hasThumbnail() ? exif.getThumbnail() : null;
+
+            if (thumbnail == null) {
+                return null;
+            }
+
+            stats.bytesRead += thumbnail.length;
+            final Bitmap bitmap = BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, null);
+
+            if (bitmap == null) {
+                return null;
+            }
+
+            final float aspect = (float) srcWidth / srcHeight;
+
+            if (Math.abs((float) bitmap.getWidth() / bitmap.getHeight() - aspect) > aspect * PREVIEW_ASPECT_TOLERANCE) {
+                // Cropped differently (or rotated); it would jump when the full image replaces it
+                bitmap.recycle();
+                return null;
+            }
+
+            return bitmap;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read EXIF thumbnail: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a thumbnail from the {@link DiskCache}, which is already at the display size
+     *
+     * @return the decoded bitmap, or null if the thumbnail could not be read
+     */
+    private static Bitmap decodeThumbnail(final Context context, final File file, final ImageRequest request, final BitmapPool pool,
+            final DecodeStats stats) {
+        FileInputStream in = null;
+
+        try {
+            in = new FileInputStream(file);
+            final BitmapFactory.Options opts = new BitmapFactory.Options();
+            final boolean reuse = pool != null && BitmapPool.isReuseSupported();
+
+            // The descriptor's position is left unchanged by each decode, so it can be decoded from repeatedly
+            if (reuse || request.getOpaqueConfig() != null) {
+                opts.inJustDecodeBounds = true;
+                BitmapFactory.decodeFileDescriptor(in.getFD(), null, opts);
+                opts.inJustDecodeBounds = false;
+            }
+
+            final Bitmap.Config config = chooseConfig(request, opts.outMimeType);
+
+            if (config != null) {
+                opts.inPreferredConfig = config;
+            }
+
+            if (reuse && !isHardware(config)) {
+                opts.inSampleSize = 1;
+                setReusableBitmap(opts, pool, opts.outWidth, opts.outHeight);
+            }
+
+            stats.decodeStart();
+            Bitmap bitmap = BitmapFactory.decodeFileDescriptor(in.getFD(), null, opts);
+
+            if (bitmap == null && opts.inBitmap != null) {
+                pool.put(opts.inBitmap);
+                opts.inBitmap = null;
+                bitmap = BitmapFactory.decodeFileDescriptor(in.getFD(), null, opts);
+            }
+
+            stats.bytesRead += file.length();
+            stats.fromDescriptor = true;
+
+            if (bitmap != null) {
+                bitmap.setDensity(context.getResources().getDisplayMetrics().densityDpi);
+            }
+
+            return bitmap;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read thumbnail for " + request, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Makes the decode mutable (so the result can be pooled later) and, if the pool has a compatible Bitmap, decodes into it. Before KitKat a
+     * Bitmap can only be reused for an unscaled decode of exactly the same size.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void setReusableBitmap(final BitmapFactory.Options opts, final BitmapPool pool, final int srcWidth, final int srcHeight) {
+        opts.inMutable = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Upper bound of the decoded size; the pool hands out anything at least this large
+            final int width = (srcWidth + opts.inSampleSize - 1) / opts.inSampleSize;
+            final int height = (srcHeight + opts.inSampleSize - 1) / opts.inSampleSize;
+            opts.inBitmap = pool.get(width, height, opts.inPreferredConfig);
+        } else if (opts.inSampleSize == 1 && !opts.inScaled) {
+            opts.inBitmap = pool.get(srcWidth, srcHeight, opts.inPreferredConfig);
+        }
+    }
+
+    /**
+     * @param mimeType the MIME type of the content, as found by a bounds decode; or null if unknown
+     * @return the config to decode the content with: the request's opaque config for JPEGs, if it has one, or else its regular config
+     */
+    static Bitmap.Config chooseConfig(final ImageRequest request, final String mimeType) {
+        if (request.getOpaqueConfig() != null && "image/jpeg".equals(mimeType)) {
+            return request.getOpaqueConfig();
+        }
+
+        return request.getConfig();
+    }
+
+    /**
+     * @return true if the config is <code>HARDWARE</code> (API 26), whose Bitmaps are immutable and can't be decoded into existing ones
+     */
+    static boolean isHardware(final Bitmap.Config config) {
+        return config != null && "HARDWARE".equals(config.name());
+    }
+
+    /**
+     * Decodes the content with the given options, straight from its file descriptor if it has one
+     */
+    private static Bitmap decode(final Context context, final ImageRequest request, final BitmapFactory.Options opts, final DecodeStats stats) {
+        AssetFileDescriptor afd = null;
+
+        if (!opts.inJustDecodeBounds) {
+            stats.decodeStart();
+        }
+
+        try {
+            afd = openDescriptor(context, request);
+
+            if (afd != null) {
+                return decodeDescriptor(afd, opts, stats);
+            }
+        } catch (Exception e) {
+            // The content was opened, so it's the decode that failed (such as into a pooled Bitmap); a stream wouldn't fare any better
+            Log.w(TAG, "Unable to decode content from descriptor: " + request, e);
+            return null;
+        } finally {
+            closeQuietly(afd);
+        }
+
+        // No descriptor (such as for a compressed asset, or none could be opened); go through a stream instead
+        return decodeStream(context, request, opts, stats);
+    }
+
+    /**
+     * Decodes straight from a descriptor that starts at the beginning of its file. One into the middle of a file (such as a resource stored
+     * uncompressed in the APK) is read through a stream positioned at its start offset instead, since the decoder would start at the file's.
+     */
+    private static Bitmap decodeDescriptor(final AssetFileDescriptor afd, final BitmapFactory.Options opts, final DecodeStats stats)
+            throws IOException {
+        if (afd.getStartOffset() == 0) {
+            final Bitmap bitmap = BitmapFactory.decodeFileDescriptor(afd.getFileDescriptor(), null, opts);
+
+            if (!opts.inJustDecodeBounds) {
+                final long length = afd.getLength();
+                stats.bytesRead += length != AssetFileDescriptor.UNKNOWN_LENGTH ? length : afd.getParcelFileDescriptor().getStatSize();
+                stats.fromDescriptor = true;
+            }
+
+            return bitmap;
+        }
+
+        final CountingInputStream in = new CountingInputStream(afd.createInputStream());
+
+        try {
+            return BitmapFactory.decodeStream(in, null, opts);
+        } finally {
+            stats.bytesRead += in.getCount();
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return a descriptor for Uri content whose {@link ContentSource} can open one, or null for anything else. Content that can't be opened as a
+     * descriptor (such as from a provider that only serves streams, or a permission change racing the open) may still be read as a stream.
+     */
+    private static AssetFileDescriptor openDescriptor(final Context context, final ImageRequest request) {
+        final Uri uri = request.getUri();
+
+        if (request.getResource() != 0 || uri == null) {
+            return null;
+        }
+
+        final ContentSource source = ContentRegistry.getInstance().getSource(uri.getScheme());
+
+        try {
+            return source != null ? source.openDescriptor(context, uri) : null;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to open descriptor, reading a stream instead: " + request, e);
+            return null;
+        }
+    }
+
+    private static Bitmap decodeStream(final Context context, final ImageRequest request, final BitmapFactory.Options opts,
+            final DecodeStats stats) {
+        CountingInputStream in = null;
+
+        try {
+            final InputStream source = openStream(context, request);
+
+            if (source == null) {
+                return null;
+            }
+
+            in = new CountingInputStream(source);
+            return BitmapFactory.decodeStream(in, null, opts);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to decode content: " + request, e);
+            return null;
+        } finally {
+            if (in != null) {
+                stats.bytesRead += in.getCount();
+            }
+
+            closeQuietly(in);
+        }
+    }
+
+    private static InputStream openStream(final Context context, final ImageRequest request) throws IOException {
+        if (request.getResource() != 0) {
+            return context.getResources().openRawResource(request.getResource());
+        }
+
+        final Uri uri = request.getUri();
+        final ContentSource source = ContentRegistry.getInstance().getSource(uri.getScheme());
+
+        return source != null ? source.openStream(context, uri) : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Computes the factor the source must be scaled by to be displayed at the target size with the given scale type. Scale types that do not
+     * scale the content (<code>CENTER</code>, <code>MATRIX</code>) always return 1.
+     */
+    static float computeScale(int srcWidth, int srcHeight, int dstWidth, int dstHeight, PlusScaleType scaleType) {
+        final float widthScale = (float) dstWidth / srcWidth;
+        final float heightScale = (float) dstHeight / srcHeight;
+
+        if (scaleType == null) {
+            scaleType = PlusScaleType.FIT_CENTER;
+        }
+
+        switch (scaleType) {
+            case TOP_CROP:
+                // Only the width needs to be filled, unless the scaled height falls short (see ImageViewPlus#setFrame)
+                return widthScale * srcHeight < dstHeight ? heightScale : widthScale;
+
+            case CENTER_CROP:
+            case FIT_XY:
+                return Math.max(widthScale, heightScale);
+
+            case FIT_START:
+            case FIT_CENTER:
+            case FIT_END:
+            case CENTER_INSIDE:
+                return Math.min(widthScale, heightScale);
+
+            case CENTER:
+            case MATRIX:
+            default:
+                return 1f;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+        private long mMark;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if (b >= 0) {
+                mCount++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            final int read = super.read(buffer, offset, count);
+
+            if (read > 0) {
+                mCount += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            super.mark(readLimit);
+            mMark = mCount;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            mCount = mMark;
+        }
+    }
+
+    /**
+     * Hands a {@link ContentDecoder} the stream its content's type was recognized from, rewound to the start, the first time it opens the
+     * request's Uri as a stream
+     */
+    private static class SniffedSource implements ContentSource {
+        private final ContentSource mSource;
+        private final Uri mUri;
+        private InputStream mSniffed;
+
+        SniffedSource(ContentSource source, Uri uri, InputStream sniffed) {
+            mSource = source;
+            mUri = uri;
+            mSniffed = sniffed;
+        }
+
+        @Override
+        public String getType(Context context, Uri uri) {
+            return mSource.getType(context, uri);
+        }
+
+        @Override
+        public InputStream openStream(Context context, Uri uri) throws IOException {
+            if (mSniffed == null || !uri.equals(mUri)) {
+                return mSource.openStream(context, uri);
+            }
+
+            final InputStream sniffed = mSniffed;
+            mSniffed = null;
+            return sniffed;
+        }
+
+        @Override
+        public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException {
+            return mSource.openDescriptor(context, uri);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+
+/**
+ * Receives the events of every {@link ImageViewPlus} content load in the process, for instrumentation. Register one with
+ * {@link ImageViewPlus#setLoadListener(ImageLoadListener)}; {@link ImageLoadMetrics} is a ready-made implementation that aggregates them.
+ * <p/>
+ * Times are {@link System#nanoTime()} values. Events are delivered on whichever thread they happen on: requests, memory cache hits,
+ * deliveries, cancellations and auto resets on the main thread, and the rest on the thread doing the decode. Implementations must be thread
+ * safe and quick.
+ * <p/>
+ * The I/O phase of a decode covers opening the content and reading its header (or reading it whole, for content that is decoded from memory);
+ * the decode phase covers producing the pixels, including whatever encoded data the decoder reads as it goes. Concurrent requests for the same
+ * content share one decode, so they each report a request and a delivery, but only one I/O and decode phase.
+ */
+public interface ImageLoadListener {
+    /**
+     * Where cached content was found
+     */
+    public static enum CacheTier {
+        /**
+         * The decoded content, in the {@link DrawableCache}
+         */
+        MEMORY,
+
+        /**
+         * A downscaled thumbnail, in the {@link DiskCache}
+         */
+        DISK
+    }
+
+    /**
+     * Called when a view starts resolving its content
+     */
+    public void onRequested(ImageRequest request, long timeNanos);
+
+    /**
+     * Called when the content was found in a cache
+     */
+    public void onCacheHit(ImageRequest request, CacheTier tier, long timeNanos);
+
+    public void onIoStart(ImageRequest request, long timeNanos);
+
+    /**
+     * @param durationNanos the time since {@link #onIoStart(ImageRequest, long)}
+     * @param bytesRead the encoded bytes read so far
+     */
+    public void onIoEnd(ImageRequest request, long timeNanos, long durationNanos, long bytesRead);
+
+    public void onDecodeStart(ImageRequest request, long timeNanos);
+
+    /**
+     * @param durationNanos the time since {@link #onDecodeStart(ImageRequest, long)}
+     * @param bytesRead the encoded bytes read by the whole decode
+     * @param decodedBytes the size of the decoded pixels, or 0 if unknown (e.g., for content that isn't a bitmap)
+     * @param config the config of the decoded pixels, or null if unknown
+     */
+    public void onDecodeEnd(ImageRequest request, long timeNanos, long durationNanos, long bytesRead, long decodedBytes, Bitmap.Config config);
+
+    /**
+     * Called when the content is shown by the view that requested it
+     *
+     * @param latencyNanos the time since {@link #onRequested(ImageRequest, long)}
+     */
+    public void onDelivered(ImageRequest request, long timeNanos, long latencyNanos);
+
+    /**
+     * Called when a view gives up on a pending load, because it was rebound or detached
+     */
+    public void onCancelled(ImageRequest request, long timeNanos);
+
+    /**
+     * Called when the content could not be read or decoded
+     */
+    public void onFailed(ImageRequest request, long timeNanos);
+
+    /**
+     * Called when a view found its content recycled while drawing, and reset itself to its default drawable
+     *
+     * @see ImageViewPlus.DefaultDrawableListener#onAutoResetDefaultDrawable(ImageViewPlus)
+     */
+    public void onAutoReset(ImageViewPlus view, long timeNanos);
+}
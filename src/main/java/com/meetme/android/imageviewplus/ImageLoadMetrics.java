@@ -0,0 +1,227 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+
+/**
+ * Aggregates {@link ImageLoadListener} events into counts and percentiles of the most recent loads, e.g. for a jank dashboard:
+ *
+ * <pre>
+ * ImageLoadMetrics metrics = new ImageLoadMetrics();
+ * ImageViewPlus.setLoadListener(metrics);
+ * ...
+ * long p90 = metrics.percentile(ImageLoadMetrics.Metric.LATENCY, 90);
+ * </pre>
+ *
+ * Each metric keeps a fixed number of its most recent samples, so memory use is bounded and percentiles follow recent behavior.
+ */
+public class ImageLoadMetrics implements ImageLoadListener {
+    /**
+     * The default number of samples kept per metric
+     */
+    private static final int DEFAULT_SAMPLE_COUNT = 512;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    public static enum Metric {
+        /**
+         * Nanoseconds from a view requesting content to showing it
+         */
+        LATENCY,
+
+        /**
+         * Nanoseconds spent opening content and reading its header
+         */
+        IO_TIME,
+
+        /**
+         * Nanoseconds spent decoding pixels
+         */
+        DECODE_TIME,
+
+        /**
+         * Encoded bytes read per decode
+         */
+        BYTES_READ,
+
+        /**
+         * Decoded bytes per decode
+         */
+        DECODED_BYTES
+    }
+
+    private final SampleReservoir[] mSamples;
+
+    private int mRequestedCount;
+    private int mMemoryHitCount;
+    private int mDiskHitCount;
+    private int mDeliveredCount;
+    private int mCancelledCount;
+    private int mFailedCount;
+    private int mAutoResetCount;
+
+    public ImageLoadMetrics() {
+        this(DEFAULT_SAMPLE_COUNT);
+    }
+
+    /**
+     * @param sampleCount the number of most recent samples to keep per metric
+     */
+    public ImageLoadMetrics(int sampleCount) {
+        if (sampleCount <= 0) {
+            throw new IllegalArgumentException("sampleCount <= 0");
+        }
+
+        mSamples = new SampleReservoir[Metric.values().length];
+
+        for (int i = 0; i < mSamples.length; i++) {
+            mSamples[i] = new SampleReservoir(sampleCount);
+        }
+    }
+
+    /**
+     * @param metric the metric
+     * @param percentile the percentile, from 0 to 100
+     * @return the given percentile of the metric's recent samples (nearest rank), or 0 if there are none
+     */
+    public synchronized long percentile(Metric metric, float percentile) {
+        return mSamples[metric.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * @return the number of samples of the metric recorded since creation or the last {@link #reset()}, of which only the most recent are kept
+     */
+    public synchronized int sampleCount(Metric metric) {
+        return mSamples[metric.ordinal()].count();
+    }
+
+    public synchronized int requestedCount() {
+        return mRequestedCount;
+    }
+
+    public synchronized int memoryHitCount() {
+        return mMemoryHitCount;
+    }
+
+    public synchronized int diskHitCount() {
+        return mDiskHitCount;
+    }
+
+    public synchronized int deliveredCount() {
+        return mDeliveredCount;
+    }
+
+    public synchronized int cancelledCount() {
+        return mCancelledCount;
+    }
+
+    public synchronized int failedCount() {
+        return mFailedCount;
+    }
+
+    public synchronized int autoResetCount() {
+        return mAutoResetCount;
+    }
+
+    /**
+     * Clears all counts and samples
+     */
+    public synchronized void reset() {
+        for (SampleReservoir samples : mSamples) {
+            samples.clear();
+        }
+
+        mRequestedCount = 0;
+        mMemoryHitCount = 0;
+        mDiskHitCount = 0;
+        mDeliveredCount = 0;
+        mCancelledCount = 0;
+        mFailedCount = 0;
+        mAutoResetCount = 0;
+    }
+
+    private void record(Metric metric, long value) {
+        mSamples[metric.ordinal()].record(value);
+    }
+
+    @Override
+    public synchronized void onRequested(ImageRequest request, long timeNanos) {
+        mRequestedCount++;
+    }
+
+    @Override
+    public synchronized void onCacheHit(ImageRequest request, CacheTier tier, long timeNanos) {
+        if (tier == CacheTier.MEMORY) {
+            mMemoryHitCount++;
+        } else {
+            mDiskHitCount++;
+        }
+    }
+
+    @Override
+    public void onIoStart(ImageRequest request, long timeNanos) {
+    }
+
+    @Override
+    public synchronized void onIoEnd(ImageRequest request, long timeNanos, long durationNanos, long bytesRead) {
+        record(Metric.IO_TIME, durationNanos);
+    }
+
+    @Override
+    public void onDecodeStart(ImageRequest request, long timeNanos) {
+    }
+
+    @Override
+    public synchronized void onDecodeEnd(ImageRequest request, long timeNanos, long durationNanos, long bytesRead, long decodedBytes,
+            Bitmap.Config config) {
+        record(Metric.DECODE_TIME, durationNanos);
+        record(Metric.BYTES_READ, bytesRead);
+        record(Metric.DECODED_BYTES, decodedBytes);
+    }
+
+    @Override
+    public synchronized void onDelivered(ImageRequest request, long timeNanos, long latencyNanos) {
+        mDeliveredCount++;
+        record(Metric.LATENCY, latencyNanos);
+    }
+
+    @Override
+    public synchronized void onCancelled(ImageRequest request, long timeNanos) {
+        mCancelledCount++;
+    }
+
+    @Override
+    public synchronized void onFailed(ImageRequest request, long timeNanos) {
+        mFailedCount++;
+    }
+
+    @Override
+    public synchronized void onAutoReset(ImageViewPlus view, long timeNanos) {
+        mAutoResetCount++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImageLoadMetrics[requested=%d,delivered=%d,memoryHits=%d,diskHits=%d,cancelled=%d,failed=%d,autoResets=%d,"
+                + "latency p50=%dms p90=%dms p99=%dms,decode p90=%dms]", requestedCount(), deliveredCount(), memoryHitCount(), diskHitCount(),
+                cancelledCount(), failedCount(), autoResetCount(), percentile(Metric.LATENCY, 50) / NANOS_PER_MILLI,
+                percentile(Metric.LATENCY, 90) / NANOS_PER_MILLI, percentile(Metric.LATENCY, 99) / NANOS_PER_MILLI,
+                percentile(Metric.DECODE_TIME, 90) / NANOS_PER_MILLI);
+    }
+}
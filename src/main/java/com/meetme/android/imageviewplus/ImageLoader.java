@@ -0,0 +1,709 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and decodes {@link ImageViewPlus} content on a bounded pool of background threads, delivering the result back on the UI thread.
+ * <p/>
+ * Concurrent loads of the same {@link ImageRequest} are coalesced: the first one queues the decode, and later ones subscribe to it and receive
+ * their own Drawable sharing the same decoded Bitmap. Each subscriber's {@link LoadTask} can be cancelled independently; the decode itself is only
+ * abandoned once every subscriber has cancelled.
+ * <p/>
+ * Content about to be shown can be {@link #prefetch prefetched} into the {@link DrawableCache}. Prefetches wait behind every queued on-screen load,
+ * and are raised to on-screen priority if a view subscribes to them. A view's load is raised or lowered as the view is shown or hidden, and
+ * cancelled when it is detached or rebound, so no decode is spent on content that has scrolled away.
+ * <p/>
+ * Loads of many views bound at once, such as a page of grid cells, can be queued together through a {@link #newBatch() batch}, which orders their
+ * decodes by source.
+ * <p/>
+ * At most one decode runs per core. {@link #queueDepth()}, {@link #averageWaitTime()} and the cancellation counts describe how well the queue is
+ * keeping up.
+ *
+ * @see ImageViewPlus#setAsyncLoading(boolean)
+ */
+public class ImageLoader {
+    /**
+     * Priority of loads for views that are shown
+     */
+    public static final int PRIORITY_NORMAL = 0;
+
+    /**
+     * Priority of loads for views that are bound but not currently shown (not yet attached, or hidden)
+     */
+    public static final int PRIORITY_HIDDEN = -1;
+
+    /**
+     * Priority of {@link #prefetch prefetches}, which run only once no view's load is queued
+     */
+    public static final int PRIORITY_PREFETCH = -2;
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static ImageLoader sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Decodes that are queued or running, by request. Guarded by itself.
+     */
+    private final HashMap<ImageRequest, Job> mInFlight = new HashMap<ImageRequest, Job>();
+
+    /**
+     * Orders jobs of equal priority first come, first served
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private int mStartedCount;
+    private long mTotalWaitTime;
+    private long mMaxWaitTime;
+    private int mCoalescedCount;
+    private int mCancelledCount;
+    private int mDroppedCount;
+
+    /**
+     * @return the process-wide loader used by {@link ImageViewPlus}
+     */
+    public static synchronized ImageLoader getInstance() {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(Runtime.getRuntime().availableProcessors());
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param threads the maximum number of concurrent decodes
+     */
+    ImageLoader(int threads) {
+        threads = Math.max(1, threads);
+        mExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new LoaderThreadFactory());
+    }
+
+    /**
+     * Queues the content for loading, or subscribes to a load of the same request that is already in flight. The callback is invoked on the UI
+     * thread, unless the returned task is cancelled first.
+     *
+     * @param context the context used to open the content
+     * @param request the content to load
+     * @param pool the pool to take a reusable decode target from, or null
+     * @param diskCache the disk cache to read and write downscaled thumbnails, or null
+     * @param callback the callback to deliver the result to
+     * @return the subscriber's task
+     */
+    public LoadTask load(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache,
+            final Callback callback) {
+        return load(context, request, pool, diskCache, PRIORITY_NORMAL, callback);
+    }
+
+    /**
+     * Queues the content for loading at the given priority, or subscribes to a load of the same request that is already in flight (raising it to
+     * the given priority if it is lower). Higher priorities run first; equal priorities run in the order they were queued.
+     *
+     * @param priority the priority, such as {@link #PRIORITY_NORMAL}; it can be changed later through {@link LoadTask#setPriority(int)}
+     * @see #load(Context, ImageRequest, BitmapPool, DiskCache, Callback)
+     */
+    public LoadTask load(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache, final int priority,
+            final Callback callback) {
+        return load(context, request, pool, diskCache, priority, callback, null);
+    }
+
+    /**
+     * @param batch the batch to queue a new decode on when it is submitted, or null to queue it now
+     */
+    private LoadTask load(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache, final int priority,
+            final Callback callback, final Batch batch) {
+        synchronized (mInFlight) {
+            final Job existing = mInFlight.get(request);
+
+            if (existing != null) {
+                final LoadTask subscriber = new LoadTask(existing, priority, callback);
+
+                if (existing.subscribe(subscriber)) {
+                    synchronized (this) {
+                        mCoalescedCount++;
+                    }
+
+                    reprioritize(existing);
+                    return subscriber;
+                }
+            }
+
+            final Job job = new Job(context.getApplicationContext(), request, pool, diskCache, priority, mSequence.getAndIncrement(), false);
+            final LoadTask task = new LoadTask(job, priority, callback);
+            job.subscribe(task);
+            mInFlight.put(request, job);
+
+            if (batch != null) {
+                // Loads of the same request in the meantime subscribe to it, but it isn't queued until the batch is submitted
+                batch.mJobs.add(job);
+            } else {
+                // Queued under the lock so that the job's priority is never changed while another thread is inserting it
+                enqueue(job);
+            }
+
+            return task;
+        }
+    }
+
+    /**
+     * Queues a quick, low resolution {@link DrawableResolver#resolvePreview preview} of sized content, to show while its full load is in progress.
+     * Previews are never coalesced, and are not cached.
+     *
+     * @param context the context used to open the content
+     * @param request the full content request
+     * @param priority the priority, such as {@link #PRIORITY_NORMAL}
+     * @param callback the callback to deliver the preview (or null, if none could be decoded) to
+     * @return the queued task
+     */
+    public LoadTask loadPreview(final Context context, final ImageRequest request, final int priority, final Callback callback) {
+        return loadPreview(context, request, priority, callback, null);
+    }
+
+    private LoadTask loadPreview(final Context context, final ImageRequest request, final int priority, final Callback callback, final Batch batch) {
+        synchronized (mInFlight) {
+            final Job job = new Job(context.getApplicationContext(), request, null, null, priority, mSequence.getAndIncrement(), true);
+            final LoadTask task = new LoadTask(job, priority, callback);
+            job.subscribe(task);
+
+            if (batch != null) {
+                batch.mJobs.add(job);
+            } else {
+                enqueue(job);
+            }
+
+            return task;
+        }
+    }
+
+    /**
+     * Queues a new job, timing its wait in the queue from now. Call while holding {@link #mInFlight}.
+     */
+    private void enqueue(Job job) {
+        job.mQueuedAt = SystemClock.uptimeMillis();
+        mExecutor.execute(job);
+    }
+
+    /**
+     * @return a new batch of loads, queued together once it is {@link Batch#submit() submitted}
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Decodes the content ahead of time into the {@link DrawableCache#getInstance() shared memory cache} (and the disk cache, if given), so a
+     * view bound to it soon after finds it already loaded. Prefetches only run once no on-screen load is waiting.
+     * <p/>
+     * To be found by a view, the request must match the one that view would make: its content, its content size (excluding padding), scale type,
+     * decode scale, config and flags. Build it with {@link ImageViewPlus#createRequest(Uri)}, or prefetch through
+     * {@link ImageViewPlus#prefetch(Uri)}. The view must have its {@link ImageViewPlus#setMemoryCacheEnabled(boolean) memory cache}
+     * enabled.
+     *
+     * @param context the context used to open the content
+     * @param request the content to load, and the size to decode it at
+     * @param pool the pool to take a reusable decode target from, or null. If given, the prefetched Bitmap is returned to it once evicted and no
+     * longer shown.
+     * @param diskCache the disk cache to read and write downscaled thumbnails, or null
+     * @return the prefetch, which may be cancelled if the content is no longer expected to be shown; or null if the content is already cached
+     * @see #cancelPrefetches()
+     */
+    public LoadTask prefetch(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache) {
+        if (request.isEmpty() || DrawableCache.getInstance().contains(request)) {
+            return null;
+        }
+
+        return load(context, request, pool, diskCache, PRIORITY_PREFETCH, new Callback() {
+            @Override
+            public void onLoadFinished(LoadTask task, Drawable drawable) {
+                if (drawable instanceof RefCountedBitmapDrawable && pool != null) {
+                    ((RefCountedBitmapDrawable) drawable).setRecyclable(true);
+                }
+
+                DrawableCache.getInstance().put(request, drawable);
+            }
+        });
+    }
+
+    /**
+     * Cancels every outstanding {@link #prefetch prefetch}, for instance when the scroll direction changes. Loads that views have also subscribed to
+     * keep going.
+     */
+    public void cancelPrefetches() {
+        final ArrayList<LoadTask> prefetches = new ArrayList<LoadTask>();
+
+        synchronized (mInFlight) {
+            for (Job job : mInFlight.values()) {
+                job.collectSubscribers(PRIORITY_PREFETCH, prefetches);
+            }
+        }
+
+        for (LoadTask task : prefetches) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * @return the number of distinct decodes currently queued or running
+     */
+    public int getInFlightCount() {
+        synchronized (mInFlight) {
+            return mInFlight.size();
+        }
+    }
+
+    /**
+     * @return the number of decodes waiting for a thread
+     */
+    public int queueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * @return the number of decodes that have started
+     */
+    public synchronized int startedCount() {
+        return mStartedCount;
+    }
+
+    /**
+     * @return the mean time decodes waited in the queue before starting, in milliseconds
+     */
+    public synchronized long averageWaitTime() {
+        return mStartedCount != 0 ? mTotalWaitTime / mStartedCount : 0;
+    }
+
+    /**
+     * @return the longest time a decode waited in the queue before starting, in milliseconds
+     */
+    public synchronized long maxWaitTime() {
+        return mMaxWaitTime;
+    }
+
+    /**
+     * @return the number of loads that subscribed to a decode already in flight instead of starting their own
+     */
+    public synchronized int coalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return the number of {@link LoadTask}s cancelled before their result was delivered
+     */
+    public synchronized int cancelledCount() {
+        return mCancelledCount;
+    }
+
+    /**
+     * @return the number of decodes removed from the queue before they started, because all of their tasks were cancelled
+     */
+    public synchronized int droppedCount() {
+        return mDroppedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ImageLoader[queued=%d,started=%d,avgWait=%dms,maxWait=%dms,coalesced=%d,cancelled=%d,dropped=%d]", queueDepth(),
+                mStartedCount, averageWaitTime(), mMaxWaitTime, mCoalescedCount, mCancelledCount, mDroppedCount);
+    }
+
+    /**
+     * Requeues the job at the highest priority of its remaining subscribers, if it is still queued
+     */
+    private void reprioritize(Job job) {
+        synchronized (mInFlight) {
+            final int priority = job.getHighestPriority();
+
+            if (priority != job.mPriority && mExecutor.remove(job)) {
+                job.mPriority = priority;
+                mExecutor.execute(job);
+            }
+        }
+    }
+
+    private synchronized void onJobStarted(long waitTime) {
+        mStartedCount++;
+        mTotalWaitTime += waitTime;
+        mMaxWaitTime = Math.max(mMaxWaitTime, waitTime);
+    }
+
+    private void finish(Job job) {
+        synchronized (mInFlight) {
+            if (mInFlight.get(job.mRequest) == job) {
+                mInFlight.remove(job.mRequest);
+            }
+        }
+    }
+
+    /**
+     * @return the key decodes are grouped by in a {@link Batch}: the scheme and authority of Uri content (its provider or host), or the
+     * resource scheme for resource ids
+     */
+    private static String sourceOf(ImageRequest request) {
+        final Uri uri = request.getUri();
+
+        if (uri == null) {
+            return ContentResolver.SCHEME_ANDROID_RESOURCE;
+        }
+
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    /**
+     * Loads added together, such as those of a page of grid cells being rebound, and queued in one pass when {@link #submit() submitted}. Their
+     * decodes are queued grouped by source, in the order each source was first added (and each source's in the order they were added), so that
+     * decodes of equal priority from the same provider, host or file system run back to back.
+     * <p/>
+     * Tasks are returned (and may be cancelled) as loads are added, and loads of the same request coalesce as usual, but no decode starts until the
+     * batch is submitted. A batch must be submitted, on the UI thread, once everything has been added to it: until then, other loads of its
+     * requests wait on it too.
+     */
+    public final class Batch {
+        private final ArrayList<Job> mJobs = new ArrayList<Job>();
+
+        private Batch() {
+        }
+
+        /**
+         * @see ImageLoader#load(Context, ImageRequest, BitmapPool, DiskCache, int, Callback)
+         */
+        public LoadTask load(final Context context, final ImageRequest request, final BitmapPool pool, final DiskCache diskCache,
+                final int priority, final Callback callback) {
+            return ImageLoader.this.load(context, request, pool, diskCache, priority, callback, this);
+        }
+
+        /**
+         * @see ImageLoader#loadPreview(Context, ImageRequest, int, Callback)
+         */
+        public LoadTask loadPreview(final Context context, final ImageRequest request, final int priority, final Callback callback) {
+            return ImageLoader.this.loadPreview(context, request, priority, callback, this);
+        }
+
+        /**
+         * Queues the decodes added since the batch was created or last submitted, other than those every subscriber has already cancelled
+         */
+        public void submit() {
+            final LinkedHashMap<String, ArrayList<Job>> bySource = new LinkedHashMap<String, ArrayList<Job>>();
+
+            for (Job job : mJobs) {
+                final String source = sourceOf(job.mRequest);
+                ArrayList<Job> jobs = bySource.get(source);
+
+                if (jobs == null) {
+                    jobs = new ArrayList<Job>();
+                    bySource.put(source, jobs);
+                }
+
+                jobs.add(job);
+            }
+
+            mJobs.clear();
+
+            synchronized (mInFlight) {
+                for (ArrayList<Job> jobs : bySource.values()) {
+                    for (Job job : jobs) {
+                        if (job.mCancelled) {
+                            continue;
+                        }
+
+                        // Subscribers may have joined, left or changed priority since it was added; and it runs after the others added before it
+                        job.mPriority = job.getHighestPriority();
+                        job.mSequence = mSequence.getAndIncrement();
+                        enqueue(job);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * One subscriber to a queued load. Cancelling it stops its callback from being invoked; the shared decode is removed from the queue (or its
+     * result discarded) once all of its subscribers have cancelled.
+     */
+    public final class LoadTask {
+        private final Job mJob;
+        private final Callback mCallback;
+
+        private volatile int mPriority;
+
+        private volatile boolean mCancelled = false;
+
+        LoadTask(Job job, int priority, Callback callback) {
+            mJob = job;
+            mPriority = priority;
+            mCallback = callback;
+        }
+
+        public ImageRequest getRequest() {
+            return mJob.mRequest;
+        }
+
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * Changes the priority of this task. The shared decode, if it has not started yet, is requeued at the highest priority of its subscribers.
+         */
+        public void setPriority(int priority) {
+            if (mPriority != priority && !mCancelled) {
+                mPriority = priority;
+                reprioritize(mJob);
+            }
+        }
+
+        /**
+         * @return the number of bytes of encoded data read to decode the content, once the task has finished. Coalesced subscribers all report the
+         * same, single decode.
+         */
+        public long getBytesRead() {
+            return mJob.mStats.bytesRead;
+        }
+
+        /**
+         * @return the config the content was decoded with, once the task has finished; or null if it wasn't decoded to a Bitmap by this library
+         */
+        public Bitmap.Config getDecodedConfig() {
+            return mJob.mStats.config;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Cancels this task. Must be called on the UI thread to guarantee the callback is not invoked afterwards.
+         */
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+
+                synchronized (ImageLoader.this) {
+                    mCancelledCount++;
+                }
+
+                mJob.unsubscribe(this);
+            }
+        }
+    }
+
+    /**
+     * The decode shared by every {@link LoadTask} for the same request
+     */
+    private final class Job implements Runnable, Comparable<Job> {
+        final Context mContext;
+        final ImageRequest mRequest;
+        final BitmapPool mPool;
+        final DiskCache mDiskCache;
+        final boolean mPreview;
+
+        /**
+         * Only changed while the job is out of the queue, guarded by {@link #mInFlight}. The wait is timed from when the job was first queued, not
+         * created (a batched job waits for its batch to be submitted) nor requeued with a new priority.
+         */
+        long mQueuedAt;
+        int mPriority;
+        long mSequence;
+
+        final DecodeStats mStats;
+
+        /**
+         * Guarded by this
+         */
+        private final ArrayList<LoadTask> mSubscribers = new ArrayList<LoadTask>(1);
+
+        private volatile boolean mCancelled = false;
+
+        Job(Context context, ImageRequest request, BitmapPool pool, DiskCache diskCache, int priority, long sequence, boolean preview) {
+            mContext = context;
+            mRequest = request;
+            mPool = pool;
+            mDiskCache = diskCache;
+            mPriority = priority;
+            mSequence = sequence;
+            mPreview = preview;
+
+            // Previews aren't reported, so they don't skew the timings of full decodes
+            mStats = new DecodeStats(preview ? null : request);
+        }
+
+        @Override
+        public int compareTo(Job another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        synchronized int getHighestPriority() {
+            int priority = mPriority;
+
+            if (!mSubscribers.isEmpty()) {
+                priority = Integer.MIN_VALUE;
+
+                for (LoadTask task : mSubscribers) {
+                    priority = Math.max(priority, task.mPriority);
+                }
+            }
+
+            return priority;
+        }
+
+        synchronized void collectSubscribers(int priority, ArrayList<LoadTask> out) {
+            for (LoadTask task : mSubscribers) {
+                if (task.mPriority == priority) {
+                    out.add(task);
+                }
+            }
+        }
+
+        /**
+         * @return false if the job has already been abandoned by all of its subscribers
+         */
+        synchronized boolean subscribe(LoadTask task) {
+            if (mCancelled) {
+                return false;
+            }
+
+            mSubscribers.add(task);
+            return true;
+        }
+
+        void unsubscribe(LoadTask task) {
+            synchronized (this) {
+                mSubscribers.remove(task);
+
+                if (mSubscribers.isEmpty()) {
+                    mCancelled = true;
+                }
+            }
+
+            if (!mCancelled) {
+                // The others may not be as urgent
+                reprioritize(this);
+                return;
+            }
+
+            // Nobody is waiting anymore; let the next load of this request start over rather than subscribe to an abandoned decode
+            finish(this);
+
+            if (mExecutor.remove(this)) {
+                synchronized (ImageLoader.this) {
+                    mDroppedCount++;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            onJobStarted(SystemClock.uptimeMillis() - mQueuedAt);
+            final Drawable drawable = mPreview ? DrawableResolver.resolvePreview(mContext, mRequest, mStats)
+                    : DrawableResolver.resolve(mContext, mRequest, mPool, mDiskCache, mStats);
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(drawable);
+                }
+            });
+        }
+
+        private void deliver(Drawable drawable) {
+            finish(this);
+
+            final LoadTask[] subscribers;
+
+            synchronized (this) {
+                subscribers = mSubscribers.toArray(new LoadTask[mSubscribers.size()]);
+                mSubscribers.clear();
+            }
+
+            final Drawable.ConstantState state = drawable != null ? drawable.getConstantState() : null;
+            boolean delivered = false;
+
+            for (LoadTask task : subscribers) {
+                if (task.mCancelled) {
+                    continue;
+                }
+
+                // Every view gets its own Drawable (sharing the Bitmap), so bounds, callbacks and filters aren't shared between them
+                task.mCallback.onLoadFinished(task, !delivered || state == null ? drawable : state.newDrawable());
+                delivered = true;
+            }
+
+            if (!delivered && mPool != null && drawable instanceof BitmapDrawable) {
+                // Nobody will ever see this one
+                mPool.put(((BitmapDrawable) drawable).getBitmap());
+            }
+        }
+    }
+
+    /**
+     * Callback invoked on the UI thread when a {@link LoadTask} completes.
+     */
+    public interface Callback {
+        /**
+         * @param task the task that finished
+         * @param drawable the loaded drawable, or null if the content could not be read
+         */
+        public void onLoadFinished(LoadTask task, Drawable drawable);
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "ImageViewPlus #" + mCount.getAndIncrement());
+        }
+    }
+}
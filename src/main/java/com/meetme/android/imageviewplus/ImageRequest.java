@@ -0,0 +1,267 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import com.meetme.android.imageviewplus.ImageViewPlus.PlusScaleType;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+/**
+ * Describes a piece of {@link ImageViewPlus} content to load: its source (a Uri or a resource id) and, optionally, the size it will be displayed
+ * at. When a target size is given, the content is downsampled while decoding so memory scales with the view rather than with the source.
+ * <p/>
+ * Requests are built with a {@link Builder}. To load content the way a given view would, such as to {@link ImageLoader#prefetch prefetch} it,
+ * use {@link ImageViewPlus#createRequest(Uri)} instead, since only a request that matches the view's exactly is found by it.
+ */
+public final class ImageRequest {
+    /**
+     * Decode only the part of the content that {@link PlusScaleType#TOP_CROP} or {@link PlusScaleType#CENTER_CROP} leaves visible
+     */
+    public static final int FLAG_REGION_DECODING = 1;
+
+    /**
+     * Decode content too large to be drawn as a single texture into tiles that each fit
+     */
+    public static final int FLAG_TILED_DECODING = 1 << 1;
+
+    /**
+     * Decode animated GIFs into an {@link AnimatedGifDrawable} rather than just their first frame
+     */
+    public static final int FLAG_ANIMATED_IMAGES = 1 << 2;
+
+    private final Uri mUri;
+    private final int mResId;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final PlusScaleType mScaleType;
+    private final boolean mExactScale;
+    private final Bitmap.Config mConfig;
+    private final Bitmap.Config mOpaqueConfig;
+    private final int mFlags;
+
+    /**
+     * Computed once, since requests are looked up in the memory cache and among the loads in flight on every bind
+     */
+    private final int mHashCode;
+
+    private ImageRequest(Builder builder) {
+        mUri = builder.mResId != 0 ? null : builder.mUri;
+        mResId = builder.mResId;
+        mTargetWidth = Math.max(0, builder.mTargetWidth);
+        mTargetHeight = Math.max(0, builder.mTargetHeight);
+        mScaleType = builder.mScaleType;
+        mExactScale = builder.mExactScale;
+        mConfig = builder.mConfig;
+        mOpaqueConfig = builder.mOpaqueConfig;
+        mFlags = builder.mFlags;
+        mHashCode = CacheKeys.requestHash(mUri, mResId, mTargetWidth, mTargetHeight, mScaleType, mExactScale, mConfig, mOpaqueConfig, mFlags);
+    }
+
+    public Uri getUri() {
+        return mUri;
+    }
+
+    public int getResource() {
+        return mResId;
+    }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public PlusScaleType getScaleType() {
+        return mScaleType;
+    }
+
+    public boolean isExactScale() {
+        return mExactScale;
+    }
+
+    public Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    public Bitmap.Config getOpaqueConfig() {
+        return mOpaqueConfig;
+    }
+
+    public int getFlags() {
+        return mFlags;
+    }
+
+    /**
+     * @return true if all of the given flags are set
+     */
+    public boolean hasFlags(int flags) {
+        return (mFlags & flags) == flags;
+    }
+
+    /**
+     * @return true if this request has a target size to downsample to
+     */
+    public boolean isSized() {
+        return mTargetWidth > 0 && mTargetHeight > 0;
+    }
+
+    /**
+     * @return true if this request has no content at all
+     */
+    public boolean isEmpty() {
+        return mResId == 0 && mUri == null;
+    }
+
+    /**
+     * @return true if this request refers to the same content as the given Uri/resource, regardless of size
+     */
+    public boolean isSameContent(Uri uri, int resId) {
+        if (mResId != 0 || resId != 0) {
+            return mResId == resId;
+        }
+
+        return mUri == uri || (mUri != null && mUri.equals(uri));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof ImageRequest)) {
+            return false;
+        }
+
+        final ImageRequest other = (ImageRequest) o;
+
+        return mHashCode == other.mHashCode
+                && mResId == other.mResId
+                && mTargetWidth == other.mTargetWidth
+                && mTargetHeight == other.mTargetHeight
+                && mScaleType == other.mScaleType
+                && mExactScale == other.mExactScale
+                && mConfig == other.mConfig
+                && mOpaqueConfig == other.mOpaqueConfig
+                && mFlags == other.mFlags
+                && (mUri == null ? other.mUri == null : mUri.equals(other.mUri));
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageRequest{" + (mResId != 0 ? "res=0x" + Integer.toHexString(mResId) : "uri=" + mUri)
+                + ", target=" + mTargetWidth + "x" + mTargetHeight + ", scaleType=" + mScaleType + ", config=" + mConfig
+                + (mOpaqueConfig != null ? ", opaqueConfig=" + mOpaqueConfig : "")
+                + (mFlags != 0 ? ", flags=0x" + Integer.toHexString(mFlags) : "") + "}";
+    }
+
+    /**
+     * Builds {@link ImageRequest}s. Everything but the content is optional: by default the content is decoded at full size, with the platform's
+     * default config.
+     */
+    public static final class Builder {
+        private Uri mUri;
+        private int mResId;
+        private int mTargetWidth;
+        private int mTargetHeight;
+        private PlusScaleType mScaleType;
+        private boolean mExactScale;
+        private Bitmap.Config mConfig;
+        private Bitmap.Config mOpaqueConfig;
+        private int mFlags;
+
+        /**
+         * @param uri the Uri of the content, or null
+         */
+        public Builder setUri(Uri uri) {
+            mUri = uri;
+            return this;
+        }
+
+        /**
+         * @param resId the resource id of the content, or 0. Takes precedence over the Uri.
+         */
+        public Builder setResource(int resId) {
+            mResId = resId;
+            return this;
+        }
+
+        /**
+         * @param targetWidth the width the content will be displayed at, or 0 if unknown
+         * @param targetHeight the height the content will be displayed at, or 0 if unknown
+         */
+        public Builder setTargetSize(int targetWidth, int targetHeight) {
+            mTargetWidth = targetWidth;
+            mTargetHeight = targetHeight;
+            return this;
+        }
+
+        /**
+         * @param scaleType the scale type the content will be displayed with
+         */
+        public Builder setScaleType(PlusScaleType scaleType) {
+            mScaleType = scaleType;
+            return this;
+        }
+
+        /**
+         * @param exactScale true to scale to the exact target size while decoding, false to only subsample by powers of two
+         */
+        public Builder setExactScale(boolean exactScale) {
+            mExactScale = exactScale;
+            return this;
+        }
+
+        /**
+         * @param config the preferred bitmap config, or null for the platform default
+         */
+        public Builder setConfig(Bitmap.Config config) {
+            mConfig = config;
+            return this;
+        }
+
+        /**
+         * @param opaqueConfig the bitmap config to use instead for content that can't have alpha (JPEGs), such as RGB_565; or null to always use
+         * the {@link #setConfig(Bitmap.Config) config}
+         */
+        public Builder setOpaqueConfig(Bitmap.Config opaqueConfig) {
+            mOpaqueConfig = opaqueConfig;
+            return this;
+        }
+
+        /**
+         * @param flags any of {@link #FLAG_REGION_DECODING}, {@link #FLAG_TILED_DECODING} and {@link #FLAG_ANIMATED_IMAGES}, or 0
+         */
+        public Builder setFlags(int flags) {
+            mFlags = flags;
+            return this;
+        }
+
+        public ImageRequest build() {
+            return new ImageRequest(this);
+        }
+    }
+}
@@ -19,26 +19,29 @@ package com.meetme.android.imageviewplus;
 
 import com.meetme.imageviewplus.R;
 
-import android.content.ContentResolver;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.ColorStateList;
-import android.content.res.Resources;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Matrix;
-import android.graphics.PorterDuff;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RectShape;
 import android.net.Uri;
+import android.os.Build;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
 /**
@@ -58,6 +61,16 @@ public class ImageViewPlus extends ImageView {
      */
     private Drawable mDefaultDrawable = null;
 
+    /**
+     * The resource {@link #mDefaultDrawable} was loaded from through {@link DefaultDrawables}, sharing its constant state with other views; or 0
+     */
+    private int mDefaultResource = 0;
+
+    /**
+     * Whether {@link #mDefaultDrawable} has been mutated, so tinting it no longer affects other views sharing its resource
+     */
+    private boolean mDefaultDrawableMutated = false;
+
     /**
      * The layer drawable to wrap the content
      *
@@ -74,6 +87,16 @@ public class ImageViewPlus extends ImageView {
 
     private DefaultDrawableListener mListener = null;
 
+    /**
+     * Receives the load events of every view, if set
+     */
+    private static volatile ImageLoadListener sLoadListener;
+
+    /**
+     * When the current content was requested, in {@link System#nanoTime()}, for the load listener
+     */
+    private long mRequestedAt;
+
     private PlusScaleType mScaleType;
 
     private Drawable mContentDrawable;
@@ -83,10 +106,239 @@ public class ImageViewPlus extends ImageView {
      */
     private ColorStateList mTintColorList;
 
+    /**
+     * The color filter currently set on this view (rather than on its layer drawable)
+     */
+    private ColorFilter mViewColorFilter;
+
+    /**
+     * The alpha last set through {@link #setImageAlpha(int)} or {@link #setAlpha(int)}
+     */
+    private int mImageAlpha = 255;
+
+    /**
+     * The layer drawable the overlay tint was last applied to, and the filter it was given, so unchanged tints aren't applied again
+     */
+    private LayerDrawable mTintedLayer;
+
+    private ColorFilter mTintedLayerFilter;
+
     private int mContentResource;
 
     private Uri mContentUri;
 
+    /**
+     * Whether {@link #setImageURI(Uri)} and {@link #setImageResource(int)} should read and decode on a background thread
+     *
+     * @see R.attr#asyncLoading
+     */
+    private boolean mAsyncLoading = false;
+
+    /**
+     * The background load of the current content, if one is in progress
+     */
+    private ImageLoader.LoadTask mPendingLoad;
+
+    /**
+     * Whether a background load was cancelled when this view was detached, and should be queued again once re-attached
+     */
+    private boolean mReloadOnAttach = false;
+
+    /**
+     * Whether the content was released while this view was hidden, and should be loaded again once it is shown
+     */
+    private boolean mReloadOnShow = false;
+
+    /**
+     * Whether the content is released while this view is detached or hidden under memory pressure, and loaded again when it is needed
+     *
+     * @see R.attr#autoRelease
+     */
+    private boolean mAutoRelease = false;
+
+    /**
+     * Registered with the application while this view is attached, if {@link #mAutoRelease} is enabled (API 14)
+     */
+    private ComponentCallbacks2 mMemoryCallbacks;
+
+    /**
+     * Whether bitmap content is downsampled to the view's measured size while decoding
+     *
+     * @see R.attr#sizeAwareDecoding
+     */
+    private boolean mSizeAwareDecoding = false;
+
+    /**
+     * Whether size-aware decoding scales to the exact view size, rather than only subsampling by powers of two
+     *
+     * @see R.attr#exactDecodeScale
+     */
+    private boolean mExactDecodeScale = false;
+
+    /**
+     * Set when size-aware content is waiting for the first frame before it can be resolved
+     */
+    private boolean mResolveOnLayout = false;
+
+    /**
+     * Whether decoded content is shared through the process-wide {@link DrawableCache}
+     *
+     * @see R.attr#memoryCache
+     */
+    private boolean mMemoryCache = false;
+
+    /**
+     * The cache key of the current content, if it is held by the {@link DrawableCache}
+     */
+    private ImageRequest mCachedRequest;
+
+    /**
+     * Whether this view currently holds a pin on {@link #mCachedRequest}
+     */
+    private boolean mCachePinned = false;
+
+    private boolean mAttachedToWindow = false;
+
+    /**
+     * Whether downscaled thumbnails are stored in (and read from) the process-wide {@link DiskCache}
+     *
+     * @see R.attr#diskCache
+     */
+    private boolean mDiskCache = false;
+
+    /**
+     * Whether decodes reuse Bitmaps from the process-wide {@link BitmapPool}, and content Bitmaps go back to it when replaced
+     *
+     * @see R.attr#bitmapReuse
+     */
+    private boolean mBitmapReuse = false;
+
+    /**
+     * Whether decoded content Bitmaps are freed as soon as no view or cache references them, rather than checked for recycling on every draw
+     *
+     * @see R.attr#refCounting
+     */
+    private boolean mRefCounting = false;
+
+    /**
+     * The current content, if it is reference counted
+     */
+    private RefCountedBitmapDrawable mContentRef;
+
+    /**
+     * Whether this view currently holds a reference on {@link #mContentRef}
+     */
+    private boolean mContentRefHeld = false;
+
+    /**
+     * Whether the Bitmaps referenced by the content are resolved once per content change, rather than on every draw
+     *
+     * @see R.attr#trackRecycledBitmaps
+     */
+    private boolean mTrackRecycledBitmaps = false;
+
+    /**
+     * Whether a low resolution preview is shown while the full content is loading in the background
+     *
+     * @see R.attr#progressiveLoading
+     */
+    private boolean mProgressiveLoading = false;
+
+    /**
+     * The background load of the preview of the current content, if {@link #mProgressiveLoading} is enabled
+     */
+    private ImageLoader.LoadTask mPendingPreview;
+
+    /**
+     * Whether the content currently shown is only a preview, with the full content still to be loaded
+     */
+    private boolean mShowingPreview = false;
+
+    /**
+     * Whether {@link #requestLayout()} is ignored while content of the same size is swapped in
+     */
+    private boolean mBlockLayoutRequests = false;
+
+    /**
+     * Whether {@link #invalidate()} and {@link #requestLayout()} are held back until a {@link BatchBinder batch} has bound every view, and whether
+     * either was called in the meantime
+     */
+    private boolean mDeferUpdates = false;
+    private boolean mInvalidatePending = false;
+    private boolean mLayoutPending = false;
+
+    /**
+     * Whether the layer drawable and content are rendered once into {@link #mComposite}, rather than drawn layer by layer on every frame
+     *
+     * @see R.attr#precomposite
+     */
+    private boolean mPrecomposite = false;
+
+    /**
+     * How the Bitmap config of size-aware decodes is chosen
+     *
+     * @see R.attr#decodeConfig
+     */
+    private DecodeConfig mDecodeConfig = DecodeConfig.PLATFORM_DEFAULT;
+
+    /**
+     * Whether size-aware decodes for {@link PlusScaleType#TOP_CROP} and {@link PlusScaleType#CENTER_CROP} only decode the visible region
+     *
+     * @see R.attr#regionDecoding
+     */
+    private boolean mRegionDecoding = false;
+
+    /**
+     * Whether content too large for a single texture is decoded into tiles
+     *
+     * @see R.attr#tiledDecoding
+     */
+    private boolean mTiledDecoding = false;
+
+    /**
+     * Whether animated GIFs are played rather than showing their first frame
+     *
+     * @see R.attr#animatedImages
+     */
+    private boolean mAnimatedImages = false;
+
+    /**
+     * The layer drawable and content as last rendered, the size of the view
+     */
+    private Bitmap mComposite;
+
+    private Canvas mCompositeCanvas;
+
+    /**
+     * Whether {@link #mComposite} needs to be rendered again before it is drawn
+     */
+    private boolean mCompositeDirty = true;
+
+    /**
+     * The Bitmaps referenced by the content (directly, or by one of its layers), when {@link #mTrackRecycledBitmaps} is enabled. Only the
+     * first {@link #mTrackedBitmapCount} entries are valid.
+     */
+    private Bitmap[] mTrackedBitmaps;
+
+    private int mTrackedBitmapCount = 0;
+
+    /**
+     * Reused by {@link #setFrame(int, int, int, int)} for {@link PlusScaleType#TOP_CROP}
+     */
+    private final Matrix mTopCropMatrix = new Matrix();
+
+    /**
+     * Placeholder for the content layer of {@link #mLayerDrawable} when there is no content, created once on demand
+     */
+    private ShapeDrawable mLayerPlaceholder;
+
+    private final Runnable mResolveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            resolveUri();
+        }
+    };
+
     public ImageViewPlus(final Context context) {
         this(context, null);
     }
@@ -105,16 +357,32 @@ public class ImageViewPlus extends ImageView {
             TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ImageViewPlus, 0, 0);
 
             if (a != null) {
-                Drawable defaultDrawable = a.getDrawable(R.styleable.ImageViewPlus_defaultDrawable);
+                int defaultResource = a.getResourceId(R.styleable.ImageViewPlus_defaultDrawable, 0);
+                Drawable defaultDrawable = defaultResource == 0 ? a.getDrawable(R.styleable.ImageViewPlus_defaultDrawable) : null;
                 Drawable selectorDrawable = a.getDrawable(R.styleable.ImageViewPlus_layerDrawable);
                 int selectorLayerId = a.getResourceId(R.styleable.ImageViewPlus_contentLayerId, CONTENT_LAYER_ID_EMPTY);
                 int scaleType = a.getInt(R.styleable.ImageViewPlus_scaleType, -1);
+                mAsyncLoading = a.getBoolean(R.styleable.ImageViewPlus_asyncLoading, mAsyncLoading);
+                mSizeAwareDecoding = a.getBoolean(R.styleable.ImageViewPlus_sizeAwareDecoding, mSizeAwareDecoding);
+                mExactDecodeScale = a.getBoolean(R.styleable.ImageViewPlus_exactDecodeScale, mExactDecodeScale);
+                mMemoryCache = a.getBoolean(R.styleable.ImageViewPlus_memoryCache, mMemoryCache);
+                mDiskCache = a.getBoolean(R.styleable.ImageViewPlus_diskCache, mDiskCache);
+                mBitmapReuse = a.getBoolean(R.styleable.ImageViewPlus_bitmapReuse, mBitmapReuse);
+                mRefCounting = a.getBoolean(R.styleable.ImageViewPlus_refCounting, mRefCounting);
+                mTrackRecycledBitmaps = a.getBoolean(R.styleable.ImageViewPlus_trackRecycledBitmaps, mTrackRecycledBitmaps);
+                mProgressiveLoading = a.getBoolean(R.styleable.ImageViewPlus_progressiveLoading, mProgressiveLoading);
+                mPrecomposite = a.getBoolean(R.styleable.ImageViewPlus_precomposite, mPrecomposite);
+                int decodeConfig = a.getInt(R.styleable.ImageViewPlus_decodeConfig, -1);
+                mRegionDecoding = a.getBoolean(R.styleable.ImageViewPlus_regionDecoding, mRegionDecoding);
+                mTiledDecoding = a.getBoolean(R.styleable.ImageViewPlus_tiledDecoding, mTiledDecoding);
+                mAnimatedImages = a.getBoolean(R.styleable.ImageViewPlus_animatedImages, mAnimatedImages);
+                mAutoRelease = a.getBoolean(R.styleable.ImageViewPlus_autoRelease, mAutoRelease);
 
                 mTintColorList = a.getColorStateList(R.styleable.ImageViewPlus_overlayTintColor);
 
                 if (mTintColorList == null) {
                     // Not specified, fall back to default
-                    mTintColorList = context.getResources().getColorStateList(R.color.ivp__overlay);
+                    mTintColorList = DefaultDrawables.getOverlayTint(context.getResources());
                 }
 
                 a.recycle();
@@ -123,7 +391,13 @@ public class ImageViewPlus extends ImageView {
                     setScaleType(PlusScaleType.getScaleType(scaleType));
                 }
 
-                if (defaultDrawable != null) {
+                if (decodeConfig >= 0) {
+                    setDecodeConfig(DecodeConfig.getDecodeConfig(decodeConfig));
+                }
+
+                if (defaultResource != 0) {
+                    setDefaultResource(defaultResource);
+                } else if (defaultDrawable != null) {
                     setDefaultDrawable(defaultDrawable);
                 }
 
@@ -136,7 +410,7 @@ public class ImageViewPlus extends ImageView {
                     int color = mTintColorList.getDefaultColor();
 
                     if (color != Color.TRANSPARENT) {
-                        setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+                        setViewTint(color);
                     }
                 }
             }
@@ -146,9 +420,9 @@ public class ImageViewPlus extends ImageView {
     /**
      * Sets a drawable as the content of this ImageView.
      * <p/>
-     * This does Bitmap reading and decoding on the UI thread, which can cause a latency hiccup. If that's a concern, consider using
-     * {@link #setImageDrawable(android.graphics.drawable.Drawable)} or {@link #setImageBitmap(android.graphics.Bitmap)} and
-     * {@link android.graphics.BitmapFactory} instead.
+     * Unless {@link #setAsyncLoading(boolean) async loading} is enabled, this does Bitmap reading and decoding on the UI thread, which can cause a
+     * latency hiccup. If that's a concern, consider enabling it, or using {@link #setImageDrawable(android.graphics.drawable.Drawable)} or
+     * {@link #setImageBitmap(android.graphics.Bitmap)} and {@link android.graphics.BitmapFactory} instead.
      *
      * @param resId the resource identifier of the the drawable
      * @attr ref android.R.styleable#ImageView_src
@@ -156,6 +430,8 @@ public class ImageViewPlus extends ImageView {
     @Override
     public void setImageResource(int resId) {
         if (mContentUri != null || mContentResource != resId) {
+            cancelPendingLoad();
+            releaseContent();
             updateDrawable(null);
             mContentResource = resId;
             mContentUri = null;
@@ -168,9 +444,9 @@ public class ImageViewPlus extends ImageView {
      * Sets the content of this ImageView to the specified Uri.
      * <p/>
      * <p class="note">
-     * This does Bitmap reading and decoding on the UI thread, which can cause a latency hiccup. If that's a concern, consider using
-     * {@link #setImageDrawable(android.graphics.drawable.Drawable)} or {@link #setImageBitmap(android.graphics.Bitmap)} and
-     * {@link android.graphics.BitmapFactory} instead.
+     * Unless {@link #setAsyncLoading(boolean) async loading} is enabled, this does Bitmap reading and decoding on the UI thread, which can cause a
+     * latency hiccup. If that's a concern, consider enabling it, or using {@link #setImageDrawable(android.graphics.drawable.Drawable)} or
+     * {@link #setImageBitmap(android.graphics.Bitmap)} and {@link android.graphics.BitmapFactory} instead.
      * </p>
      *
      * @param uri The Uri of an image
@@ -180,6 +456,8 @@ public class ImageViewPlus extends ImageView {
         if (mContentResource != 0 ||
                 (mContentUri != uri &&
                         (uri == null || mContentUri == null || !uri.equals(mContentUri)))) {
+            cancelPendingLoad();
+            releaseContent();
             updateDrawable(null);
             mContentResource = 0;
             mContentUri = uri;
@@ -188,6 +466,63 @@ public class ImageViewPlus extends ImageView {
         }
     }
 
+    /**
+     * Binds the content as one of a {@link BatchBinder batch}. Unlike {@link #setImageURI(Uri)} and {@link #setImageResource(int)}, the previous
+     * content is replaced only once: by the cached content, or else by the default drawable until the load added to the batch completes. Unless
+     * this view wraps its content, that replacement doesn't request a layout. Invalidation (and the layout, if needed) is held back until
+     * {@link #endBatch()}, so the batch's views are invalidated once each after all of them are bound.
+     *
+     * @param uri the Uri of the content, or null
+     * @param resId the resource identifier of the content, if the Uri is null
+     * @param batch the batch to add the load to, if there is one
+     */
+    void bind(Uri uri, int resId, ImageLoader.Batch batch) {
+        if (uri != null ? mContentResource == 0 && uri.equals(mContentUri) : mContentUri == null && mContentResource == resId) {
+            return;
+        }
+
+        mDeferUpdates = true;
+        mBlockLayoutRequests = hasFixedSize();
+
+        try {
+            cancelPendingLoad();
+            releaseContent();
+            mContentResource = uri != null ? 0 : resId;
+            mContentUri = uri;
+
+            resolveUri(batch);
+        } finally {
+            mBlockLayoutRequests = false;
+        }
+
+        if (PlusScaleType.TOP_CROP.equals(mScaleType)) {
+            // The top crop matrix is only computed when the frame changes
+            setFrameInternal(getLeft(), getTop(), getRight(), getBottom());
+        }
+    }
+
+    /**
+     * Ends the {@link #bind(Uri, int, ImageLoader.Batch) binding} of this view as one of a batch, invalidating it and requesting a layout if either
+     * was held back
+     */
+    void endBatch() {
+        if (!mDeferUpdates) {
+            return;
+        }
+
+        mDeferUpdates = false;
+
+        if (mLayoutPending) {
+            mLayoutPending = false;
+            requestLayout();
+        }
+
+        if (mInvalidatePending) {
+            mInvalidatePending = false;
+            invalidate();
+        }
+    }
+
     /**
      * Sets a drawable as the content of this ImageView
      *
@@ -196,6 +531,8 @@ public class ImageViewPlus extends ImageView {
     @Override
     public void setImageDrawable(Drawable drawable) {
         if (mContentDrawable != drawable) {
+            cancelPendingLoad();
+            releaseContent();
             mContentResource = 0;
             mContentUri = null;
 
@@ -218,8 +555,13 @@ public class ImageViewPlus extends ImageView {
      */
     @Override
     public void setImageBitmap(Bitmap bm) {
-        // if this is used frequently, may handle bitmaps explicitly
-        // to reduce the intermediate drawable object
+        if (bm != null && mContentUri == null && mContentResource == 0 && mContentDrawable != mDefaultDrawable
+                && mContentDrawable instanceof BitmapDrawable && ((BitmapDrawable) mContentDrawable).getBitmap() == bm) {
+            // Already showing it; don't allocate another wrapper, just redraw in case its pixels changed
+            invalidate();
+            return;
+        }
+
         setImageDrawable(new BitmapDrawable(getContext().getResources(), bm));
     }
 
@@ -231,19 +573,18 @@ public class ImageViewPlus extends ImageView {
             Drawable d = getDrawable();
 
             if (d instanceof LayerDrawable) {
-                clearColorFilter();
                 // there is a bug with LayerDrawable and an ImageView's ColorFilter, so apply it directly to the LayerDrawable
-                applyColorFilterToLayerDrawable((LayerDrawable) d);
+                applyColorFilterToLayerDrawable((LayerDrawable) d, false);
             } else if (mTintColorList.isStateful()) {
-                int color = mTintColorList.getColorForState(getDrawableState(), Color.TRANSPARENT);
-
-                if (color == Color.TRANSPARENT) {
-                    clearColorFilter();
-                } else {
-                    setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
-                }
+                setViewTint(mTintColorList.getColorForState(getDrawableState(), Color.TRANSPARENT));
             }
         }
+
+        if (mPrecomposite && mLayerDrawable != null) {
+            // The state affects the selector layers and the tint, whether or not they invalidated themselves
+            mCompositeDirty = true;
+            invalidate();
+        }
     }
 
     /**
@@ -252,20 +593,66 @@ public class ImageViewPlus extends ImageView {
      * the drawable.  We need to clear the ImageView's ColorFilter, and instead apply the ColorFilter directly to the drawable.
      *
      * @param drawable
+     * @param force true to apply the filter even if the drawable was already given it for the current state
      */
-    private void applyColorFilterToLayerDrawable(LayerDrawable drawable) {
+    private void applyColorFilterToLayerDrawable(LayerDrawable drawable, boolean force) {
         if (mTintColorList != null) {
-            clearColorFilter();
+            if (mViewColorFilter != null) {
+                clearColorFilter();
+            }
+
             int color = mTintColorList.getColorForState(getDrawableState(), Color.TRANSPARENT);
+            final ColorFilter filter = color == Color.TRANSPARENT ? null : TintFilters.get(color);
 
-            if (color == Color.TRANSPARENT) {
-                drawable.clearColorFilter();
-            } else {
-                drawable.setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+            if (!force && drawable == mTintedLayer && filter == mTintedLayerFilter) {
+                // Already tinted for this state; don't mutate and invalidate its layers again
+                return;
+            }
+
+            if (filter != null && mDefaultResource != 0 && !mDefaultDrawableMutated && mContentDrawable == mDefaultDrawable) {
+                // The filter is applied to every layer; don't let it leak into the other views sharing the default's state
+                mDefaultDrawable.mutate();
+                mDefaultDrawableMutated = true;
             }
+
+            mTintedLayer = drawable;
+            mTintedLayerFilter = filter;
+            drawable.setColorFilter(filter);
+        }
+    }
+
+    /**
+     * Tints this view with the shared filter for the given color, unless it already is
+     *
+     * @param color the tint color, or {@link Color#TRANSPARENT} for none
+     */
+    private void setViewTint(int color) {
+        final ColorFilter filter = color == Color.TRANSPARENT ? null : TintFilters.get(color);
+
+        if (filter != mViewColorFilter) {
+            setColorFilter(filter);
         }
     }
 
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setAlpha(int alpha) {
+        mImageAlpha = alpha;
+        super.setAlpha(alpha);
+    }
+
+    @Override
+    public void setImageAlpha(int alpha) {
+        mImageAlpha = alpha;
+        super.setImageAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mViewColorFilter = cf;
+        super.setColorFilter(cf);
+    }
+
     /**
      * @return the LayerDrawable used to wrap content, if any
      */
@@ -300,249 +687,1310 @@ public class ImageViewPlus extends ImageView {
 
         if (scaleType.superScaleType != null) {
             // Use the scaling built in to the ImageView for any scale type which has a super scale type
-            setScaleType(scaleType.superScaleType);
+            setSuperScaleType(scaleType.superScaleType);
         } else {
             // Our own built-in scale types all use a custom MATRIX implementation
-            setScaleType(ImageView.ScaleType.MATRIX);
+            setSuperScaleType(ImageView.ScaleType.MATRIX);
         }
     }
 
     /**
-     * @param mListener the DefaultDrawableListener to set
+     * Sets the ImageView scale type, only if it differs from the current one
      */
-    public void setListener(final DefaultDrawableListener listener) {
-        this.mListener = listener;
+    private void setSuperScaleType(ImageView.ScaleType scaleType) {
+        if (getScaleType() != scaleType) {
+            setScaleType(scaleType);
+        }
     }
 
     /**
-     * @return the DefaultDrawableListener
+     * Sets whether {@link #setImageURI(Uri)} and {@link #setImageResource(int)} read and decode their content on a background thread. While the
+     * load is in progress the default drawable is shown.
+     *
+     * @param asyncLoading true to load off of the UI thread, false to load synchronously
+     * @attr ref R.styleable#ImageViewPlus_asyncLoading
      */
-    public DefaultDrawableListener getListener() {
-        return mListener;
+    public void setAsyncLoading(boolean asyncLoading) {
+        mAsyncLoading = asyncLoading;
     }
 
     /**
-     * Returns true if this view is referencing a BitmapDrawable, and its Bitmap reference has been recycled.
-     *
-     * @return
+     * @return true if content is loaded off of the UI thread
      */
-    public boolean isDrawableRecycled() {
-        final Drawable drawable = getDrawable();
-
-        if (drawable instanceof BitmapDrawable) {
-            final Bitmap bmp = ((BitmapDrawable) drawable).getBitmap();
-
-            if (bmp != null) {
-                return bmp.isRecycled();
-            }
-        } else if (drawable instanceof LayerDrawable) {
-            // This is a somewhat shoddy implementation, but it's quick and gets the job done.
-            final LayerDrawable layerDrawable = (LayerDrawable) drawable;
-
-            // Iterate over the layers; look for a recycled bitmap
-            for (int i = 0; i < (layerDrawable).getNumberOfLayers(); i++) {
-                final Drawable iDrawable = layerDrawable.getDrawable(i);
-
-                if (iDrawable instanceof BitmapDrawable) {
-                    final BitmapDrawable bitmapDrawable = (BitmapDrawable) iDrawable;
-                    final Bitmap bmp = bitmapDrawable.getBitmap();
-
-                    if (bmp != null) {
-                        if (bmp.isRecycled()) {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-
-        return false;
+    public boolean isAsyncLoading() {
+        return mAsyncLoading;
     }
 
     /**
-     * Resets the ImageView resource back to the default.
+     * Sets whether bitmap content from {@link #setImageURI(Uri)} and {@link #setImageResource(int)} is downsampled to this view's size while
+     * decoding. Content is then not resolved until the view has been laid out, and the sample size is chosen based on the current
+     * {@link PlusScaleType} (e.g., {@link PlusScaleType#TOP_CROP} only needs to fill the width).
+     *
+     * @param sizeAwareDecoding true to decode at the view's size, false to always decode at full size
+     * @attr ref R.styleable#ImageViewPlus_sizeAwareDecoding
      */
-    public void resetToDefault() {
-        setImageDrawable(mDefaultDrawable);
-        refreshDrawableState();
+    public void setSizeAwareDecoding(boolean sizeAwareDecoding) {
+        mSizeAwareDecoding = sizeAwareDecoding;
     }
 
     /**
-     * Returns the view's default drawable.
-     *
-     * @return current default drawable
-     * @attr ref com.myyearbook.m.R.styleable#DownloadableImageView_defaultDrawable
-     * @see #setDefaultDrawable(Drawable)
+     * @return true if bitmap content is downsampled to this view's size while decoding
      */
-    public Drawable getDefaultDrawable() {
-        return mDefaultDrawable;
+    public boolean isSizeAwareDecoding() {
+        return mSizeAwareDecoding;
+    }
+
+    /**
+     * Sets whether {@link #setSizeAwareDecoding(boolean) size-aware decoding} scales to the exact view size. Otherwise only power-of-two
+     * subsampling is used, which is faster but may leave the decoded bitmap up to twice as large as needed.
+     *
+     * @param exactDecodeScale true to scale to the exact size while decoding
+     * @attr ref R.styleable#ImageViewPlus_exactDecodeScale
+     */
+    public void setExactDecodeScale(boolean exactDecodeScale) {
+        mExactDecodeScale = exactDecodeScale;
+    }
+
+    /**
+     * @return true if size-aware decoding scales to the exact view size
+     */
+    public boolean isExactDecodeScale() {
+        return mExactDecodeScale;
+    }
+
+    /**
+     * Sets whether content from {@link #setImageURI(Uri)} and {@link #setImageResource(int)} is shared through the process-wide
+     * {@link DrawableCache}. Cached content is applied synchronously, even when {@link #setAsyncLoading(boolean) async loading} is enabled, and
+     * stays pinned in the cache while this view is attached and showing it.
+     *
+     * @param memoryCache true to use the memory cache
+     * @attr ref R.styleable#ImageViewPlus_memoryCache
+     */
+    public void setMemoryCacheEnabled(boolean memoryCache) {
+        mMemoryCache = memoryCache;
+    }
+
+    /**
+     * @return true if content is shared through the memory cache
+     */
+    public boolean isMemoryCacheEnabled() {
+        return mMemoryCache;
+    }
+
+    /**
+     * Sets whether downscaled thumbnails of Uri content are stored in the process-wide {@link DiskCache}, so that later loads (even after the
+     * process restarts) don't need to read and decode the original. Only applies with {@link #setSizeAwareDecoding(boolean) size-aware decoding},
+     * and should be combined with {@link #setAsyncLoading(boolean) async loading} to keep the disk I/O off of the UI thread.
+     *
+     * @param diskCache true to use the disk cache
+     * @attr ref R.styleable#ImageViewPlus_diskCache
+     */
+    public void setDiskCacheEnabled(boolean diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * @return true if downscaled thumbnails are stored in the disk cache
+     */
+    public boolean isDiskCacheEnabled() {
+        return mDiskCache;
+    }
+
+    /**
+     * Sets whether decodes for {@link #setImageURI(Uri)} and {@link #setImageResource(int)} reuse Bitmaps from the process-wide
+     * {@link BitmapPool}. Once this view's decoded content is replaced and no other view or the {@link #setMemoryCacheEnabled(boolean) memory
+     * cache} references it, its Bitmap is returned to the pool.
+     * <p/>
+     * Don't enable this if the Bitmap may still be referenced elsewhere, e.g. through {@link #getDrawable()}, after the content is replaced.
+     *
+     * @param bitmapReuse true to reuse Bitmaps
+     * @attr ref R.styleable#ImageViewPlus_bitmapReuse
+     */
+    public void setBitmapReuseEnabled(boolean bitmapReuse) {
+        mBitmapReuse = bitmapReuse;
+    }
+
+    /**
+     * @return true if decodes reuse pooled Bitmaps
+     */
+    public boolean isBitmapReuseEnabled() {
+        return mBitmapReuse;
+    }
+
+    /**
+     * Sets whether decoded content is reference counted. Bitmaps decoded by this view are then freed (returned to the pool if
+     * {@link #setBitmapReuseEnabled(boolean) bitmap reuse} is enabled, recycled otherwise) as soon as no view or cache references them. This view
+     * releases its reference when its content is replaced or it is detached, and re-resolves the content if it was freed in the meantime when it
+     * is attached again. Since the Bitmap can't be recycled while it's shown, the recycled Bitmap check in {@link #onDraw(Canvas)} is skipped.
+     * <p/>
+     * The Bitmap must not be recycled by the application, nor used after the content is replaced, e.g. through {@link #getDrawable()}.
+     *
+     * @param refCounting true to reference count decoded content
+     * @attr ref R.styleable#ImageViewPlus_refCounting
+     */
+    public void setRefCountingEnabled(boolean refCounting) {
+        mRefCounting = refCounting;
+    }
+
+    /**
+     * @return true if decoded content is reference counted
+     */
+    public boolean isRefCountingEnabled() {
+        return mRefCounting;
+    }
+
+    /**
+     * @param mListener the DefaultDrawableListener to set
+     */
+    public void setListener(final DefaultDrawableListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * @return the DefaultDrawableListener
+     */
+    public DefaultDrawableListener getListener() {
+        return mListener;
+    }
+
+    /**
+     * Sets the listener that receives the load events of every ImageViewPlus in the process, such as an {@link ImageLoadMetrics}. Loads that are
+     * already under way keep reporting to the listener that was set when they started.
+     *
+     * @param listener the listener, or null for none
+     */
+    public static void setLoadListener(final ImageLoadListener listener) {
+        sLoadListener = listener;
+    }
+
+    /**
+     * @return the listener that receives the load events of every ImageViewPlus, or null
+     */
+    public static ImageLoadListener getLoadListener() {
+        return sLoadListener;
+    }
+
+    /**
+     * Sets whether the Bitmaps referenced by the content are resolved once, whenever the content or layer drawable changes, instead of walking the
+     * content's layers on every draw. This makes {@link #isDrawableRecycled()} a check of the pre-resolved Bitmaps only, so if the layers of a
+     * LayerDrawable content are changed directly, call {@link #updateRecycledBitmapTracking()} afterwards.
+     *
+     * @param trackRecycledBitmaps true to resolve the content's Bitmaps once per content change
+     * @attr ref R.styleable#ImageViewPlus_trackRecycledBitmaps
+     */
+    public void setTrackRecycledBitmaps(boolean trackRecycledBitmaps) {
+        mTrackRecycledBitmaps = trackRecycledBitmaps;
+        updateRecycledBitmapTracking();
+    }
+
+    /**
+     * @return true if the content's Bitmaps are resolved once per content change
+     */
+    public boolean isTrackingRecycledBitmaps() {
+        return mTrackRecycledBitmaps;
+    }
+
+    /**
+     * Sets whether a low resolution preview (the image's EXIF thumbnail, or a heavily subsampled decode) is shown while the full content loads,
+     * and then swapped for the full content without a layout pass. The preview is wrapped in the layer drawable and tinted like any content.
+     * Only applies with {@link #setAsyncLoading(boolean) async loading} and {@link #setSizeAwareDecoding(boolean) size-aware decoding}.
+     *
+     * @param progressiveLoading true to show a preview while loading
+     * @attr ref R.styleable#ImageViewPlus_progressiveLoading
+     */
+    public void setProgressiveLoading(boolean progressiveLoading) {
+        mProgressiveLoading = progressiveLoading;
+    }
+
+    /**
+     * @return true if a preview is shown while loading
+     */
+    public boolean isProgressiveLoading() {
+        return mProgressiveLoading;
+    }
+
+    /**
+     * Sets whether the {@link #setLayerResources(LayerDrawable, int) layer drawable}, its content and the overlay tint are rendered together into
+     * a single Bitmap the size of the view, which is all that is drawn on each frame. The Bitmap is rendered again whenever the content, drawable
+     * state, size or anything else that invalidates this view changes. This trades one view-sized Bitmap for the overdraw of drawing every layer
+     * on every frame, and only applies while a layer drawable is set.
+     *
+     * @param precomposite true to draw the layers from a single pre-rendered Bitmap
+     * @attr ref R.styleable#ImageViewPlus_precomposite
+     */
+    public void setPrecomposite(boolean precomposite) {
+        if (mPrecomposite != precomposite) {
+            mPrecomposite = precomposite;
+
+            if (!precomposite) {
+                releaseComposite();
+            }
+
+            invalidate();
+        }
+    }
+
+    /**
+     * @return true if the layers are drawn from a single pre-rendered Bitmap
+     */
+    public boolean isPrecomposite() {
+        return mPrecomposite;
+    }
+
+    /**
+     * Sets how the Bitmap config of {@link #setSizeAwareDecoding(boolean) size-aware} decodes is chosen. The config each load ended up with is
+     * reported by {@link ImageLoader.LoadTask#getDecodedConfig()}, and logged by the decoder at debug level.
+     *
+     * @param decodeConfig the decode config policy; null for {@link DecodeConfig#PLATFORM_DEFAULT}
+     * @attr ref R.styleable#ImageViewPlus_decodeConfig
+     */
+    public void setDecodeConfig(DecodeConfig decodeConfig) {
+        mDecodeConfig = decodeConfig != null ? decodeConfig : DecodeConfig.PLATFORM_DEFAULT;
+    }
+
+    /**
+     * @return the decode config policy
+     */
+    public DecodeConfig getDecodeConfig() {
+        return mDecodeConfig;
+    }
+
+    /**
+     * Sets whether {@link #setSizeAwareDecoding(boolean) size-aware} decodes for {@link PlusScaleType#TOP_CROP} and
+     * {@link PlusScaleType#CENTER_CROP} only decode the part of the image that is visible, rather than subsampling all of it and cropping it when
+     * drawn. For a tall image in a short view this reads and holds a fraction of the pixels. Requires API 10; ignored before.
+     *
+     * @param regionDecoding true to only decode the visible region of cropped content
+     * @attr ref R.styleable#ImageViewPlus_regionDecoding
+     */
+    public void setRegionDecoding(boolean regionDecoding) {
+        mRegionDecoding = regionDecoding;
+    }
+
+    /**
+     * @return true if only the visible region of cropped content is decoded
+     */
+    public boolean isRegionDecoding() {
+        return mRegionDecoding;
+    }
+
+    /**
+     * Sets whether content that would decode larger than the maximum texture size is decoded into a {@link TiledBitmapDrawable} instead, which
+     * the hardware renderer can draw where it would otherwise refuse to draw a single oversized Bitmap. Tiled content is neither disk cached nor
+     * pooled. Requires API 10; ignored before.
+     *
+     * @param tiledDecoding true to decode oversized content into tiles
+     * @attr ref R.styleable#ImageViewPlus_tiledDecoding
+     */
+    public void setTiledDecoding(boolean tiledDecoding) {
+        mTiledDecoding = tiledDecoding;
+    }
+
+    /**
+     * @return true if oversized content is decoded into tiles
+     */
+    public boolean isTiledDecoding() {
+        return mTiledDecoding;
+    }
+
+    /**
+     * Sets whether animated GIF content is played, as an {@link AnimatedGifDrawable}, rather than showing only its first frame. Playback runs
+     * while this view is attached and shown, pauses otherwise, and its frames are freed on detach. Frames are rendered on a background thread.
+     *
+     * @param animatedImages true to play animated content
+     * @attr ref R.styleable#ImageViewPlus_animatedImages
+     */
+    public void setAnimatedImages(boolean animatedImages) {
+        mAnimatedImages = animatedImages;
+    }
+
+    /**
+     * @return true if animated content is played
+     */
+    public boolean isAnimatedImages() {
+        return mAnimatedImages;
+    }
+
+    /**
+     * Sets whether this view lets go of its Uri or resource content when it is detached, or when it is hidden and the app is asked to trim its
+     * memory (API 14), so that the heap tracks what is actually on screen. The content goes back to the {@link #setMemoryCacheEnabled(boolean)
+     * memory cache} or {@link #setBitmapReuseEnabled(boolean) pool}, the default drawable is shown in its place, and it is resolved again
+     * (usually from the cache) when this view is attached or shown again. Content set directly as a Drawable or Bitmap is never released.
+     *
+     * @param autoRelease true to release content while it isn't needed
+     * @attr ref R.styleable#ImageViewPlus_autoRelease
+     */
+    public void setAutoRelease(boolean autoRelease) {
+        if (mAutoRelease != autoRelease) {
+            mAutoRelease = autoRelease;
+
+            if (mAttachedToWindow) {
+                updateMemoryCallbacks();
+            }
+        }
+    }
+
+    /**
+     * @return true if content is released while it isn't needed
+     */
+    public boolean isAutoRelease() {
+        return mAutoRelease;
+    }
+
+    /**
+     * Re-resolves the Bitmaps referenced by the content. Only needed when {@link #setTrackRecycledBitmaps(boolean) tracking} is enabled and the
+     * content's layers were changed without going through this view.
+     */
+    public void updateRecycledBitmapTracking() {
+        mTrackedBitmapCount = 0;
+
+        if (!mTrackRecycledBitmaps) {
+            mTrackedBitmaps = null;
+            return;
+        }
+
+        final Drawable drawable = getDrawable();
+
+        if (drawable instanceof BitmapDrawable) {
+            trackBitmap(((BitmapDrawable) drawable).getBitmap());
+        } else if (drawable instanceof LayerDrawable) {
+            final LayerDrawable layerDrawable = (LayerDrawable) drawable;
+
+            for (int i = 0, count = layerDrawable.getNumberOfLayers(); i < count; i++) {
+                final Drawable iDrawable = layerDrawable.getDrawable(i);
+
+                if (iDrawable instanceof BitmapDrawable) {
+                    trackBitmap(((BitmapDrawable) iDrawable).getBitmap());
+                }
+            }
+        }
+
+        // Don't hold on to Bitmaps we're no longer showing
+        if (mTrackedBitmaps != null) {
+            for (int i = mTrackedBitmapCount; i < mTrackedBitmaps.length && mTrackedBitmaps[i] != null; i++) {
+                mTrackedBitmaps[i] = null;
+            }
+        }
+    }
+
+    private void trackBitmap(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        if (mTrackedBitmaps == null) {
+            mTrackedBitmaps = new Bitmap[1];
+        } else if (mTrackedBitmapCount == mTrackedBitmaps.length) {
+            final Bitmap[] bitmaps = new Bitmap[mTrackedBitmaps.length * 2];
+            System.arraycopy(mTrackedBitmaps, 0, bitmaps, 0, mTrackedBitmapCount);
+            mTrackedBitmaps = bitmaps;
+        }
+
+        mTrackedBitmaps[mTrackedBitmapCount++] = bitmap;
+    }
+
+    /**
+     * Returns true if this view is referencing a BitmapDrawable, and its Bitmap reference has been recycled.
+     *
+     * @return
+     */
+    public boolean isDrawableRecycled() {
+        if (mContentDrawable instanceof AnimatedGifDrawable && ((AnimatedGifDrawable) mContentDrawable).isRecycled()) {
+            return true;
+        }
+
+        if (mTrackRecycledBitmaps) {
+            for (int i = 0; i < mTrackedBitmapCount; i++) {
+                if (mTrackedBitmaps[i].isRecycled()) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        final Drawable drawable = getDrawable();
+
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bmp = ((BitmapDrawable) drawable).getBitmap();
+
+            if (bmp != null) {
+                return bmp.isRecycled();
+            }
+        } else if (drawable instanceof LayerDrawable) {
+            // This is a somewhat shoddy implementation, but it's quick and gets the job done.
+            final LayerDrawable layerDrawable = (LayerDrawable) drawable;
+
+            // Iterate over the layers; look for a recycled bitmap
+            for (int i = 0; i < (layerDrawable).getNumberOfLayers(); i++) {
+                final Drawable iDrawable = layerDrawable.getDrawable(i);
+
+                if (iDrawable instanceof BitmapDrawable) {
+                    final BitmapDrawable bitmapDrawable = (BitmapDrawable) iDrawable;
+                    final Bitmap bmp = bitmapDrawable.getBitmap();
+
+                    if (bmp != null) {
+                        if (bmp.isRecycled()) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Resets the ImageView resource back to the default.
+     */
+    public void resetToDefault() {
+        setImageDrawable(mDefaultDrawable);
+        refreshDrawableState();
+    }
+
+    /**
+     * Returns the view's default drawable.
+     *
+     * @return current default drawable
+     * @attr ref com.myyearbook.m.R.styleable#DownloadableImageView_defaultDrawable
+     * @see #setDefaultDrawable(Drawable)
+     */
+    public Drawable getDefaultDrawable() {
+        return mDefaultDrawable;
     }
 
     /**
      * Returns <code>true</code> if the view is currently referencing the default drawable. If no default has been provided, this method returns
      * false, even if there is no super-class drawable (i.e., even if both Drawables are null, this method still returns false).
      * <p/>
-     * <b>Warning</b>: If both attributes refer to the same resource, this will return <code>false</code>. That is because
-     * <code>android:src="@drawable/foo"</code> and <code>app:defaultDrawable="@drawable/foo"</code> both create new (distinct) Drawable instances,
-     * therefore they are not equal.
+     * Content set from the same resource as the default (for instance <code>android:src="@drawable/foo"</code> and
+     * <code>app:defaultDrawable="@drawable/foo"</code>) also counts as the default, since it shares the default's constant state.
      *
      * @return
      */
-    public boolean isShowingDefaultDrawable() {
-        if (mDefaultDrawable == null) {
-            return false;
+    public boolean isShowingDefaultDrawable() {
+        if (mDefaultDrawable == null) {
+            return false;
+        }
+
+        final Drawable drawable = getDrawable();
+
+        if (drawable == mDefaultDrawable || (mDefaultResource != 0 && mContentResource == mDefaultResource)) {
+            return true;
+        }
+
+        final Drawable.ConstantState state = mDefaultDrawable.getConstantState();
+        return drawable != null && state != null && drawable.getConstantState() == state;
+    }
+
+    /**
+     * Sets a drawable as the default drawable for the view.
+     *
+     * @param drawable The drawable to set
+     * @see #getDefaultDrawable()
+     */
+    public void setDefaultDrawable(final Drawable drawable) {
+        final boolean wasDefault = isShowingDefaultDrawable();
+
+        if (mDefaultDrawable != null) {
+            mDefaultDrawable.setCallback(null);
+            unscheduleDrawable(mDefaultDrawable);
+        }
+
+        mDefaultDrawable = drawable;
+        mDefaultResource = 0;
+        mDefaultDrawableMutated = false;
+
+        if (wasDefault || getDrawable() == null) {
+            setImageDrawable(drawable);
+        }
+    }
+
+    /**
+     * Sets a resource id as the default drawable for the view. Views with the same default resource share its constant state, rather than each
+     * loading their own copy.
+     *
+     * @param resId The desired resource identifier, as generated by the aapt tool. This integer encodes the package, type, and resource entry. The
+     * value 0 is an invalid identifier.
+     * @attr ref com.myyearbook.m.R.styleable#DownloadableImageView_defaultDrawable
+     * @see #setDefaultDrawable(Drawable)
+     */
+    @SuppressWarnings("unused")
+    public void setDefaultResource(final int resId) {
+        setDefaultDrawable(DefaultDrawables.get(getResources(), resId));
+        mDefaultResource = resId;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttachedToWindow = true;
+
+        if (mCachedRequest != null && !mCachePinned) {
+            DrawableCache.getInstance().pin(mCachedRequest);
+            mCachePinned = true;
+        }
+
+        if (mContentRef != null && !mContentRefHeld) {
+            if (mContentRef.isReleased()) {
+                // Freed while we were detached; load it again
+                mContentRef = null;
+                releaseContent();
+                updateDrawable(null);
+                resolveUri();
+            } else {
+                mContentRef.acquire();
+                mContentRefHeld = true;
+            }
+        }
+
+        if (mReloadOnAttach) {
+            mReloadOnAttach = false;
+
+            if (mPendingLoad == null) {
+                resolveUri();
+            }
+        }
+
+        reloadIfShown();
+        updateMemoryCallbacks();
+        updateAnimation();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mAttachedToWindow = false;
+
+        if (mCachePinned) {
+            // Keep mCachedRequest so the pin can be restored if we're re-attached
+            DrawableCache.getInstance().unpin(mCachedRequest);
+            mCachePinned = false;
+        }
+
+        if (mRefCounting && mContentRefHeld) {
+            // Keep mContentRef so it can be re-acquired if it hasn't been freed by the time we're re-attached
+            mContentRefHeld = false;
+            mContentRef.release();
+        }
+
+        releaseComposite();
+
+        if (mContentDrawable instanceof AnimatedGifDrawable) {
+            // Falls back to the first frame until playback resumes
+            ((AnimatedGifDrawable) mContentDrawable).releaseFrames();
+        }
+
+        if (mPendingLoad != null) {
+            // Nobody will see it; don't hold up the loads of views that are still on screen
+            cancelPendingLoad();
+            mReloadOnAttach = true;
+        }
+
+        if (mAutoRelease && releaseForReload()) {
+            mReloadOnAttach = true;
+        }
+
+        updateMemoryCallbacks();
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateLoadPriority();
+        reloadIfShown();
+        updateAnimation();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateLoadPriority();
+        reloadIfShown();
+        updateAnimation();
+    }
+
+    /**
+     * Raises or lowers the pending background load as this view is shown or hidden
+     */
+    private void updateLoadPriority() {
+        if (mPendingLoad != null) {
+            mPendingLoad.setPriority(getLoadPriority());
+        }
+    }
+
+    /**
+     * Lets go of the Uri or resource content, handing it back to the cache or pool, and shows the default drawable until it is resolved again
+     *
+     * @return true if content was released
+     */
+    private boolean releaseForReload() {
+        if ((mContentUri == null && mContentResource == 0) || mContentDrawable == null || mContentDrawable == mDefaultDrawable) {
+            return false;
+        }
+
+        cancelPendingLoad();
+        releaseContent();
+
+        if (!mContentRefHeld) {
+            // Already released on detach; don't take it back on attach
+            mContentRef = null;
+        }
+
+        updateDrawable(null);
+        return true;
+    }
+
+    /**
+     * Loads the content released while this view was hidden, now that it is attached and shown
+     */
+    private void reloadIfShown() {
+        if (mReloadOnShow && mAttachedToWindow && getLoadPriority() == ImageLoader.PRIORITY_NORMAL) {
+            mReloadOnShow = false;
+            resolveUri();
+        }
+    }
+
+    /**
+     * Registers for memory callbacks while this view is attached with auto release enabled, and unregisters otherwise
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void updateMemoryCallbacks() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+
+        final boolean register = mAutoRelease && mAttachedToWindow;
+
+        if (register && mMemoryCallbacks == null) {
+            mMemoryCallbacks = new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                        onMemoryPressure();
+                    }
+                }
+
+                @Override
+                public void onLowMemory() {
+                    onMemoryPressure();
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+            };
+
+            getContext().getApplicationContext().registerComponentCallbacks(mMemoryCallbacks);
+        } else if (!register && mMemoryCallbacks != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(mMemoryCallbacks);
+            mMemoryCallbacks = null;
+        }
+    }
+
+    /**
+     * Releases the content if nobody can see it
+     */
+    private void onMemoryPressure() {
+        if (mAttachedToWindow && getLoadPriority() == ImageLoader.PRIORITY_HIDDEN && releaseForReload()) {
+            mReloadOnShow = true;
+        }
+    }
+
+    /**
+     * Plays animated content while this view is attached and shown, and pauses it otherwise
+     */
+    private void updateAnimation() {
+        if (mContentDrawable instanceof AnimatedGifDrawable) {
+            final AnimatedGifDrawable animated = (AnimatedGifDrawable) mContentDrawable;
+
+            if (mAttachedToWindow && getLoadPriority() == ImageLoader.PRIORITY_NORMAL) {
+                animated.start();
+            } else {
+                animated.stop();
+            }
+        }
+    }
+
+    private int getLoadPriority() {
+        return isShown() && getWindowVisibility() == VISIBLE ? ImageLoader.PRIORITY_NORMAL : ImageLoader.PRIORITY_HIDDEN;
+    }
+
+    /**
+     * Overrides the built-in ImageView onDraw() behavior, in order to intercept a recycled Bitmap, which otherwise causes a crash. If the Bitmap is
+     * recycled, this performs a last-minute replacement using the default drawable.
+     */
+    @Override
+    protected void onDraw(@NonNull final Canvas canvas) {
+        // Reference counted content can't be recycled while we hold it
+        if (!(mRefCounting && mContentRefHeld) && isDrawableRecycled()) {
+            performAutoResetDefaultDrawable();
+        }
+
+        if (mTiledDecoding && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            updateMaxTextureSize(canvas);
+        }
+
+        if (mPrecomposite && mLayerDrawable != null && getWidth() > 0 && getHeight() > 0) {
+            drawComposite(canvas);
+        } else {
+            super.onDraw(canvas);
+        }
+    }
+
+    /**
+     * Tells the decoder how large a tile the hardware renderer can draw, which is only known once we're drawn
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void updateMaxTextureSize(final Canvas canvas) {
+        if (canvas.isHardwareAccelerated()) {
+            DrawableResolver.setMaxTextureSize(Math.min(canvas.getMaximumBitmapWidth(), canvas.getMaximumBitmapHeight()));
+        }
+    }
+
+    /**
+     * Draws the pre-rendered layers, rendering them first if anything has changed since
+     */
+    private void drawComposite(final Canvas canvas) {
+        final int width = getWidth();
+        final int height = getHeight();
+
+        if (mComposite == null || mComposite.getWidth() != width || mComposite.getHeight() != height) {
+            releaseComposite();
+            mComposite = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCompositeCanvas = new Canvas(mComposite);
+        }
+
+        if (mCompositeDirty) {
+            mComposite.eraseColor(Color.TRANSPARENT);
+            super.onDraw(mCompositeCanvas);
+            mCompositeDirty = false;
+        }
+
+        canvas.drawBitmap(mComposite, 0, 0, null);
+    }
+
+    private void releaseComposite() {
+        if (mComposite != null) {
+            mComposite.recycle();
+            mComposite = null;
+            mCompositeCanvas = null;
+        }
+
+        mCompositeDirty = true;
+    }
+
+    @Override
+    public void invalidate() {
+        // Everything that changes how the layers render (content, state, matrix, filters) invalidates the view
+        mCompositeDirty = true;
+
+        if (mDeferUpdates) {
+            mInvalidatePending = true;
+        } else {
+            super.invalidate();
+        }
+    }
+
+    @Override
+    public void invalidateDrawable(@NonNull Drawable dr) {
+        mCompositeDirty = true;
+        super.invalidateDrawable(dr);
+    }
+
+    /**
+     * Performs the automatic reset to the default drawable. This will also dispatch the
+     * {@link DefaultDrawableListener#onAutoResetDefaultDrawable(ImageViewPlus)} and {@link ImageLoadListener#onAutoReset(ImageViewPlus, long)}
+     * callbacks.
+     *
+     * @see ImageViewPlus#resetToDefault()
+     */
+    protected void performAutoResetDefaultDrawable() {
+        resetToDefault();
+
+        if (mListener != null) {
+            mListener.onAutoResetDefaultDrawable(this);
+        }
+
+        final ImageLoadListener listener = sLoadListener;
+
+        if (listener != null) {
+            listener.onAutoReset(this, System.nanoTime());
+        }
+    }
+
+    @Override
+    protected boolean setFrame(int l, int t, int r, int b) {
+        final boolean changed = setFrameInternal(l, t, r, b);
+
+        if (mResolveOnLayout && getWidth() > 0 && getHeight() > 0) {
+            mResolveOnLayout = false;
+            // Resolving may change the drawable and request layout, so don't do that in the middle of this layout pass
+            post(mResolveRunnable);
+        }
+
+        return changed;
+    }
+
+    private boolean setFrameInternal(int l, int t, int r, int b) {
+        if (PlusScaleType.TOP_CROP.equals(mScaleType)) {
+            Drawable drawable = super.getDrawable();
+
+            if (drawable != null) {
+                float intrinsicWidth = drawable.getIntrinsicWidth();
+                float intrinsicHeight = drawable.getIntrinsicHeight();
+
+                if (intrinsicWidth != -1) {
+                    float scaleFactor = ScaleMath.computeTopCropScale(r - l, b - t, intrinsicWidth, intrinsicHeight);
+
+                    if (scaleFactor == 0f) {
+                        setSuperScaleType(ScaleType.CENTER_CROP);
+                    } else {
+                        setSuperScaleType(ScaleType.MATRIX);
+                        // scale width; ImageView copies the matrix, so ours can be reused
+                        mTopCropMatrix.setScale(scaleFactor, scaleFactor);
+                        setImageMatrix(mTopCropMatrix);
+                    }
+                }
+            }
+        }
+
+        return super.setFrame(l, t, r, b);
+    }
+
+    private void resolveUri() {
+        resolveUri(null);
+    }
+
+    /**
+     * @param batch the batch this view is being {@link #bind bound} in, or null. Content bound in a batch hasn't replaced the previous content
+     * yet; it is replaced with the default drawable here, unless it is resolved straight away.
+     */
+    private void resolveUri(ImageLoader.Batch batch) {
+        if (batch == null && mContentDrawable != null && mContentDrawable != mDefaultDrawable && !mShowingPreview) {
+            return;
+        }
+
+        if (mContentResource == 0 && mContentUri == null) {
+            if (batch != null) {
+                updateDrawable(null);
+            }
+
+            return;
+        }
+
+        if (mSizeAwareDecoding && (getWidth() <= 0 || getHeight() <= 0)) {
+            if (batch != null) {
+                updateDrawable(null);
+            }
+
+            // Wait for the first frame so we know what size to decode at
+            mResolveOnLayout = true;
+            return;
+        }
+
+        final ImageRequest request = createRequest(mContentUri, mContentResource);
+        final ImageLoadListener listener = sLoadListener;
+        mRequestedAt = System.nanoTime();
+
+        if (listener != null) {
+            listener.onRequested(request, mRequestedAt);
+        }
+
+        if (mMemoryCache) {
+            final Drawable cached = DrawableCache.getInstance().get(request);
+
+            if (cached != null) {
+                if (listener != null) {
+                    listener.onCacheHit(request, ImageLoadListener.CacheTier.MEMORY, System.nanoTime());
+                }
+
+                applyResolvedDrawable(request, cached, true);
+                return;
+            }
+        }
+
+        if (mAsyncLoading && !isInEditMode()) {
+            if (batch != null) {
+                updateDrawable(null);
+            }
+
+            loadAsync(request, batch);
+            return;
+        }
+
+        Drawable d = DrawableResolver.resolve(getContext(), request, getBitmapPool(), getDiskCache(), new DecodeStats(request));
+
+        if (d == null) {
+            // Don't try again.
+            mContentUri = null;
+            updateDrawable(null);
+        } else {
+            applyResolvedDrawable(request, d, false);
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mBlockLayoutRequests) {
+            return;
         }
 
-        return mDefaultDrawable == getDrawable();
+        if (mDeferUpdates) {
+            mLayoutPending = true;
+        } else {
+            super.requestLayout();
+        }
     }
 
     /**
-     * Sets a drawable as the default drawable for the view.
+     * Shows the given content in place of content of the same intrinsic size, without a layout pass (unless this view wraps its content)
+     */
+    private void swapDrawable(Drawable drawable) {
+        mBlockLayoutRequests = hasFixedSize();
+
+        try {
+            updateDrawable(drawable);
+        } finally {
+            mBlockLayoutRequests = false;
+        }
+
+        if (PlusScaleType.TOP_CROP.equals(mScaleType)) {
+            // The top crop matrix is only computed when the frame changes
+            setFrameInternal(getLeft(), getTop(), getRight(), getBottom());
+        }
+    }
+
+    /**
+     * @return true if this view's size doesn't depend on its content, so replacing the content needn't request a layout
+     */
+    private boolean hasFixedSize() {
+        final ViewGroup.LayoutParams lp = getLayoutParams();
+        return lp != null && lp.width != ViewGroup.LayoutParams.WRAP_CONTENT && lp.height != ViewGroup.LayoutParams.WRAP_CONTENT;
+    }
+
+    /**
+     * Shows the resolved content, caching and pinning it if the memory cache is enabled
      *
-     * @param drawable The drawable to set
-     * @see #getDefaultDrawable()
+     * @param fromCache true if the drawable was just retrieved from the cache
      */
-    public void setDefaultDrawable(final Drawable drawable) {
-        final boolean wasDefault = isShowingDefaultDrawable();
+    private void applyResolvedDrawable(ImageRequest request, Drawable drawable, boolean fromCache) {
+        if (mMemoryCache && (fromCache || DrawableCache.getInstance().put(request, drawable))) {
+            mCachedRequest = request;
 
-        if (mDefaultDrawable != null) {
-            mDefaultDrawable.setCallback(null);
-            unscheduleDrawable(mDefaultDrawable);
+            if (mAttachedToWindow) {
+                DrawableCache.getInstance().pin(request);
+                mCachePinned = true;
+            }
         }
 
-        mDefaultDrawable = drawable;
+        if ((mBitmapReuse || mRefCounting) && drawable instanceof RefCountedBitmapDrawable) {
+            // Every view showing it holds a reference, so it can be freed once none of them (nor the cache) needs it
+            ((RefCountedBitmapDrawable) drawable).setRecyclable(true);
+        }
 
-        if (wasDefault || getDrawable() == null) {
-            setImageDrawable(drawable);
+        if (mShowingPreview) {
+            swapDrawable(drawable);
+        } else {
+            updateDrawable(drawable);
+        }
+
+        final ImageLoadListener listener = sLoadListener;
+
+        if (listener != null) {
+            final long now = System.nanoTime();
+            listener.onDelivered(request, now, now - mRequestedAt);
+        }
+    }
+
+    /**
+     * Releases this view's pin on its cached content, if any
+     */
+    private void releaseContent() {
+        if (mCachePinned) {
+            DrawableCache.getInstance().unpin(mCachedRequest);
+            mCachePinned = false;
         }
+
+        mCachedRequest = null;
+    }
+
+    private BitmapPool getBitmapPool() {
+        return mBitmapReuse ? BitmapPool.getInstance() : null;
+    }
+
+    private DiskCache getDiskCache() {
+        return mDiskCache && !isInEditMode() ? DiskCache.getInstance(getContext()) : null;
     }
 
     /**
-     * Sets a resource id as the default drawable for the view.
+     * Queues the current content on the {@link ImageLoader}. The result is only applied if the view still refers to the same content once it is
+     * delivered.
      *
-     * @param resId The desired resource identifier, as generated by the aapt tool. This integer encodes the package, type, and resource entry. The
-     * value 0 is an invalid identifier.
-     * @attr ref com.myyearbook.m.R.styleable#DownloadableImageView_defaultDrawable
-     * @see #setDefaultDrawable(Drawable)
+     * @param batch the batch to add the load to, or null to queue it directly
      */
-    @SuppressWarnings("unused")
-    public void setDefaultResource(final int resId) {
-        setDefaultDrawable(getResources().getDrawable(resId));
+    private void loadAsync(final ImageRequest request, final ImageLoader.Batch batch) {
+        cancelPendingLoad();
+
+        final ImageLoader.Callback callback = new ImageLoader.Callback() {
+            @Override
+            public void onLoadFinished(ImageLoader.LoadTask task, Drawable drawable) {
+                if (task != mPendingLoad) {
+                    return;
+                }
+
+                mPendingLoad = null;
+
+                if (mPendingPreview != null) {
+                    // Beaten to it; the preview is no longer needed
+                    mPendingPreview.cancel();
+                    mPendingPreview = null;
+                }
+
+                if (!request.isSameContent(mContentUri, mContentResource)) {
+                    // Rebound in the meantime
+                    return;
+                }
+
+                if (drawable == null) {
+                    // Don't try again. The default drawable is already showing, unless the preview is.
+                    mContentUri = null;
+
+                    if (mShowingPreview) {
+                        updateDrawable(null);
+                    }
+                } else {
+                    applyResolvedDrawable(request, drawable, false);
+                }
+            }
+        };
+
+        if (batch != null) {
+            mPendingLoad = batch.load(getContext(), request, getBitmapPool(), getDiskCache(), getLoadPriority(), callback);
+        } else {
+            mPendingLoad = ImageLoader.getInstance().load(getContext(), request, getBitmapPool(), getDiskCache(), getLoadPriority(), callback);
+        }
+
+        if (mProgressiveLoading && !mShowingPreview && request.isSized()) {
+            loadPreview(request, batch);
+        }
     }
 
     /**
-     * Overrides the built-in ImageView onDraw() behavior, in order to intercept a recycled Bitmap, which otherwise causes a crash. If the Bitmap is
-     * recycled, this performs a last-minute replacement using the default drawable.
+     * Queues a preview of the current content, to be shown until its full load (which must already be pending) completes
+     *
+     * @param batch the batch to add the preview to, or null to queue it directly
      */
-    @Override
-    protected void onDraw(@NonNull final Canvas canvas) {
-        if (isDrawableRecycled()) {
-            performAutoResetDefaultDrawable();
+    private void loadPreview(final ImageRequest request, final ImageLoader.Batch batch) {
+        final ImageLoader.Callback callback = new ImageLoader.Callback() {
+            @Override
+            public void onLoadFinished(ImageLoader.LoadTask task, Drawable drawable) {
+                if (task != mPendingPreview) {
+                    return;
+                }
+
+                mPendingPreview = null;
+
+                if (drawable == null || mPendingLoad == null || !request.isSameContent(mContentUri, mContentResource)) {
+                    // No preview, or too late for one
+                    return;
+                }
+
+                if (mBitmapReuse || mRefCounting) {
+                    ((RefCountedBitmapDrawable) drawable).setRecyclable(true);
+                }
+
+                swapDrawable(drawable);
+                mShowingPreview = true;
+            }
+        };
+
+        if (batch != null) {
+            mPendingPreview = batch.loadPreview(getContext(), request, getLoadPriority(), callback);
+        } else {
+            mPendingPreview = ImageLoader.getInstance().loadPreview(getContext(), request, getLoadPriority(), callback);
         }
+    }
 
-        super.onDraw(canvas);
+    /**
+     * Builds the request this view would make to load the given content at its current size and with its current settings. Only such a request
+     * is found by this view, or by another one of the same size and settings, once {@link ImageLoader#prefetch prefetched}.
+     *
+     * @param uri the Uri of the content
+     * @return the request, which has no target size if size-aware decoding is enabled and this view hasn't been laid out yet
+     * @see #prefetch(Uri)
+     */
+    public ImageRequest createRequest(Uri uri) {
+        return createRequest(uri, 0);
     }
 
     /**
-     * Performs the automatic reset to the default drawable. This will also dispatch the
-     * {@link DefaultDrawableListener#onAutoResetDefaultDrawable(ImageViewPlus)} callback.
+     * @param resId the resource identifier of the content
+     * @see #createRequest(Uri)
+     */
+    public ImageRequest createRequest(int resId) {
+        return createRequest(null, resId);
+    }
+
+    /**
+     * Loads the given content into the memory cache ahead of time, as this view would, so that it is found there when this view (or another one
+     * of the same size and settings, such as the next cells of a grid) is bound to it.
      *
-     * @see ImageViewPlus#resetToDefault()
+     * @param uri the Uri of the content
+     * @return the prefetch, which may be cancelled; or null if the content is already cached, the memory cache isn't enabled, or this view hasn't
+     * been laid out yet and the content would be decoded to its size
+     * @see ImageLoader#prefetch(Context, ImageRequest, BitmapPool, DiskCache)
      */
-    protected void performAutoResetDefaultDrawable() {
-        resetToDefault();
+    public ImageLoader.LoadTask prefetch(Uri uri) {
+        return prefetch(createRequest(uri, 0));
+    }
 
-        if (mListener != null) {
-            mListener.onAutoResetDefaultDrawable(this);
+    /**
+     * @param resId the resource identifier of the content
+     * @see #prefetch(Uri)
+     */
+    public ImageLoader.LoadTask prefetch(int resId) {
+        return prefetch(createRequest(null, resId));
+    }
+
+    private ImageLoader.LoadTask prefetch(ImageRequest request) {
+        if (!mMemoryCache || (mSizeAwareDecoding && !request.isSized())) {
+            return null;
         }
+
+        return ImageLoader.getInstance().prefetch(getContext(), request, getBitmapPool(), getDiskCache());
     }
 
-    @Override
-    protected boolean setFrame(int l, int t, int r, int b) {
-        if (PlusScaleType.TOP_CROP.equals(mScaleType)) {
-            Drawable drawable = super.getDrawable();
+    /**
+     * Builds the request for the given content, sized to this view's content area if size-aware decoding is enabled
+     */
+    private ImageRequest createRequest(Uri uri, int resId) {
+        int flags = 0;
 
-            if (drawable != null) {
-                float floatLeft = (float) l;
-                float floatRight = (float) r;
+        if (mRegionDecoding) {
+            flags |= ImageRequest.FLAG_REGION_DECODING;
+        }
 
-                float intrinsicWidth = drawable.getIntrinsicWidth();
-                float intrinsicHeight = drawable.getIntrinsicHeight();
+        if (mTiledDecoding) {
+            flags |= ImageRequest.FLAG_TILED_DECODING;
+        }
 
-                int frameHeight = b - t;
+        if (mAnimatedImages) {
+            flags |= ImageRequest.FLAG_ANIMATED_IMAGES;
+        }
 
-                if (intrinsicWidth != -1) {
-                    float scaleFactor = (floatRight - floatLeft) / intrinsicWidth;
+        final ImageRequest.Builder builder = new ImageRequest.Builder().setUri(uri).setResource(resId).setFlags(flags);
 
-                    if (scaleFactor * intrinsicHeight < frameHeight) {
-                        setScaleType(ScaleType.CENTER_CROP);
-                    } else {
-                        setScaleType(ScaleType.MATRIX);
-                        Matrix matrix = new Matrix();
-                        // scale width
-                        matrix.setScale(scaleFactor, scaleFactor);
-                        setImageMatrix(matrix);
-                    }
-                }
-            }
+        if (!mSizeAwareDecoding) {
+            return builder.build();
         }
 
-        return super.setFrame(l, t, r, b);
+        final int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+
+        Bitmap.Config config = null;
+        Bitmap.Config opaqueConfig = null;
+
+        switch (mDecodeConfig) {
+            case AUTO:
+                // The layers may be drawn through transparent areas of the content, so keep its alpha channel
+                opaqueConfig = mLayerDrawable == null ? Bitmap.Config.RGB_565 : null;
+                config = getHardwareConfig();
+                break;
+            case RGB_565:
+                config = Bitmap.Config.RGB_565;
+                break;
+            case ARGB_8888:
+                config = Bitmap.Config.ARGB_8888;
+                break;
+            case HARDWARE:
+                config = getHardwareConfig();
+                break;
+        }
+
+        return builder.setTargetSize(width, height).setScaleType(getPlusScaleType()).setExactScale(mExactDecodeScale).setConfig(config)
+                .setOpaqueConfig(opaqueConfig).build();
     }
 
-    private void resolveUri() {
-        if (mContentDrawable != null && mContentDrawable != mDefaultDrawable) {
-            return;
+    /**
+     * @return the HARDWARE config if the platform supports it and nothing this view does needs a software Bitmap, or else ARGB_8888
+     */
+    private Bitmap.Config getHardwareConfig() {
+        // Pooled Bitmaps must be mutable, disk thumbnails are compressed from the pixels, and the composite is rendered in software
+        if (DecodeConfig.sHardwareConfig != null && !mBitmapReuse && !mDiskCache && !mPrecomposite) {
+            return DecodeConfig.sHardwareConfig;
         }
 
-        Resources rsrc = getResources();
-        if (rsrc == null) {
-            return;
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * @return the active scale type, mapping the super class scale type if one was set directly through {@link #setScaleType(ScaleType)}
+     */
+    private PlusScaleType getPlusScaleType() {
+        if (mScaleType != null) {
+            return mScaleType;
         }
 
-        Drawable d = null;
-
-        if (mContentResource != 0) {
-            try {
-                d = rsrc.getDrawable(mContentResource);
-            } catch (Exception e) {
-                // Don't try again.
-                mContentUri = null;
-            }
-        } else if (mContentUri != null) {
-            String scheme = mContentUri.getScheme();
-            if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
-                /*
-                 * FIXME Can't be used due to missing compilation unit for ContentResolver#getResourceId
-                 */
-                // try {
-                // getContext().getResources().get
-                // // Load drawable through Resources, to get the source density information
-                // ContentResolver.OpenResourceIdResult r = getContext().getContentResolver().getResourceId(mContentUri);
-                // getContext().getContentResolver().d = r.r.getDrawable(r.id);
-                // } catch (Exception e) {
-                // Log.w("ImageView", "Unable to open content: " + mUri, e);
-                // }
-            } else if (ContentResolver.SCHEME_CONTENT.equals(scheme) || ContentResolver.SCHEME_FILE.equals(scheme)) {
-                try {
-                    d = Drawable.createFromStream(getContext().getContentResolver().openInputStream(mContentUri), null);
-                } catch (Exception e) {
-                    Log.w("ImageView", "Unable to open content: " + mContentUri, e);
-                }
-            } else {
-                d = Drawable.createFromPath(mContentUri.toString());
+        final ScaleType scaleType = getScaleType();
+
+        for (PlusScaleType plusScaleType : PlusScaleType.values()) {
+            if (plusScaleType.superScaleType == scaleType) {
+                return plusScaleType;
             }
+        }
+
+        return PlusScaleType.FIT_CENTER;
+    }
+
+    /**
+     * Cancels the background load (or deferred resolve) of the previous content, if any
+     */
+    private void cancelPendingLoad() {
+        mResolveOnLayout = false;
+        mReloadOnAttach = false;
+        mReloadOnShow = false;
+        removeCallbacks(mResolveRunnable);
+
+        if (mPendingLoad != null) {
+            final ImageLoadListener listener = sLoadListener;
 
-            if (d == null) {
-                System.out.println("resolveUri failed on bad bitmap uri: " + mContentUri);
-                // Don't try again.
-                mContentUri = null;
+            if (listener != null) {
+                listener.onCancelled(mPendingLoad.getRequest(), System.nanoTime());
             }
-        } else {
+
+            mPendingLoad.cancel();
+            mPendingLoad = null;
+        }
+
+        if (mPendingPreview != null) {
+            mPendingPreview.cancel();
+            mPendingPreview = null;
+        }
+    }
+
+    /**
+     * Replaces the content layer of the layer drawable this view already shows. Only if that changes the layer drawable's intrinsic size is it set
+     * again, so that ImageView measures it and requests a layout; otherwise this view is just invalidated.
+     */
+    private void swapContentLayer(Drawable drawable) {
+        final int oldWidth = mLayerDrawable.getIntrinsicWidth();
+        final int oldHeight = mLayerDrawable.getIntrinsicHeight();
+
+        // Takes the bounds of the layer it replaces, which only depend on the layer drawable's bounds
+        mLayerDrawable.setDrawableByLayerId(mContentLayerId, drawable);
+
+        if (mLayerDrawable.getIntrinsicWidth() != oldWidth || mLayerDrawable.getIntrinsicHeight() != oldHeight) {
+            super.setImageDrawable(null);
+            super.setImageDrawable(mLayerDrawable);
             return;
         }
 
-        updateDrawable(d);
+        // A LayerDrawable only passes its state on to its layers when the state changes
+        drawable.setState(mLayerDrawable.getState());
+        drawable.setVisible(mLayerDrawable.isVisible(), false);
+        invalidate();
     }
 
     /**
@@ -551,34 +1999,69 @@ public class ImageViewPlus extends ImageView {
      * @param drawable
      */
     private void updateDrawable(Drawable drawable) {
+        mShowingPreview = false;
+
         if (drawable == null && mDefaultDrawable != null) {
             drawable = mDefaultDrawable;
         }
 
+        // Take the new reference before releasing the old one, in case they share a Bitmap
+        final RefCountedBitmapDrawable previousRef = mContentRefHeld ? mContentRef : null;
+        mContentRef = drawable instanceof RefCountedBitmapDrawable ? (RefCountedBitmapDrawable) drawable : null;
+        mContentRefHeld = mContentRef != null;
+
+        if (mContentRefHeld) {
+            mContentRef.acquire();
+        }
+
+        if (mContentDrawable instanceof AnimatedGifDrawable && mContentDrawable != drawable) {
+            ((AnimatedGifDrawable) mContentDrawable).releaseFrames();
+        }
+
         mContentDrawable = drawable;
 
         if (mLayerDrawable != null) {
-            applyColorFilterToLayerDrawable(mLayerDrawable);
-
             if (drawable == null) {
                 // We need a placeholder drawable for the LayerDrawable
-                drawable = new ShapeDrawable(new RectShape());
+                if (mLayerPlaceholder == null) {
+                    mLayerPlaceholder = new ShapeDrawable(new RectShape());
+                }
+
+                drawable = mLayerPlaceholder;
             }
 
-            // FIXME there is probably a better workaround for doing this to include re-requesting layout if the content drawable is new and not
-            // equal-dimension
-            super.setImageDrawable(null);
+            // ImageView only applies its alpha and color filter to the layers present when the drawable is set. The super class drawable is the
+            // one ImageView shows; ours is already the new content.
+            if (super.getDrawable() == mLayerDrawable && mImageAlpha == 255 && (mTintColorList != null || mViewColorFilter == null)) {
+                swapContentLayer(drawable);
+            } else {
+                // ImageView ignores the drawable it already shows; clear it so the layer drawable's new size and layers are picked up
+                super.setImageDrawable(null);
 
-            // Selector is there, find the id in the layer and update that layer's Drawable
-            mLayerDrawable.setDrawableByLayerId(mContentLayerId, drawable);
-            super.setImageDrawable(mLayerDrawable);
+                // Selector is there, find the id in the layer and update that layer's Drawable
+                mLayerDrawable.setDrawableByLayerId(mContentLayerId, drawable);
+                super.setImageDrawable(mLayerDrawable);
+            }
+
+            // The content layer has changed, so apply it even if the tint hasn't
+            applyColorFilterToLayerDrawable(mLayerDrawable, true);
         } else {
             if (drawable instanceof LayerDrawable) {
-                applyColorFilterToLayerDrawable((LayerDrawable) drawable);
+                applyColorFilterToLayerDrawable((LayerDrawable) drawable, true);
             }
 
             super.setImageDrawable(drawable);
         }
+
+        if (previousRef != null) {
+            previousRef.release();
+        }
+
+        if (mTrackRecycledBitmaps) {
+            updateRecycledBitmapTracking();
+        }
+
+        updateAnimation();
     }
 
     /**
@@ -667,6 +2150,76 @@ public class ImageViewPlus extends ImageView {
         }
     }
 
+    /**
+     * How the Bitmap config of size-aware decodes is chosen
+     *
+     * @see #setDecodeConfig(DecodeConfig)
+     */
+    public static enum DecodeConfig {
+        /**
+         * Leave it to the platform, which decodes to ARGB_8888. From XML, use this syntax: <code>app:decodeConfig="platformDefault"</code>.
+         */
+        PLATFORM_DEFAULT(0),
+        /**
+         * Decode JPEGs, which can't have alpha, to RGB_565 at half the memory, unless a layer drawable is set. Everything else is decoded to
+         * ARGB_8888, as an immutable HARDWARE Bitmap where that is supported (API 26) and the view neither reuses Bitmaps, disk caches nor
+         * pre-composites. From XML, use this syntax: <code>app:decodeConfig="auto"</code>.
+         */
+        AUTO(1),
+        /**
+         * Always decode to RGB_565, dropping any alpha. From XML, use this syntax: <code>app:decodeConfig="rgb565"</code>.
+         */
+        RGB_565(2),
+        /**
+         * Always decode to ARGB_8888. From XML, use this syntax: <code>app:decodeConfig="argb8888"</code>.
+         */
+        ARGB_8888(3),
+        /**
+         * Decode to HARDWARE Bitmaps where they are supported and usable, as for {@link #AUTO}, or else ARGB_8888. From XML, use this syntax:
+         * <code>app:decodeConfig="hardware"</code>.
+         */
+        HARDWARE(4);
+
+        public final int nativeInt;
+
+        private final static SparseArray<DecodeConfig> sDecodeConfigs = new SparseArray<DecodeConfig>();
+
+        /**
+         * Bitmap.Config.HARDWARE, looked up by name since it is newer than the SDK this is compiled against; null if unsupported
+         */
+        final static Bitmap.Config sHardwareConfig;
+
+        static {
+            for (DecodeConfig decodeConfig : values()) {
+                sDecodeConfigs.put(decodeConfig.nativeInt, decodeConfig);
+            }
+
+            Bitmap.Config hardwareConfig = null;
+
+            if (Build.VERSION.SDK_INT >= 26) {
+                try {
+                    hardwareConfig = Bitmap.Config.valueOf("HARDWARE");
+                } catch (IllegalArgumentException e) {
+                    // Not on this device after all
+                }
+            }
+
+            sHardwareConfig = hardwareConfig;
+        }
+
+        public static DecodeConfig getDecodeConfig(int nativeInt) {
+            if (nativeInt >= 0) {
+                return sDecodeConfigs.get(nativeInt);
+            }
+
+            return null;
+        }
+
+        private DecodeConfig(int nativeInt) {
+            this.nativeInt = nativeInt;
+        }
+    }
+
     /**
      * Interface definition for callbacks to be invoked when ImageViewPlus events occur.
      */
@@ -0,0 +1,197 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * BitmapDrawable whose Bitmap is reference counted. Every {@link ImageViewPlus} showing it, and the {@link DrawableCache} while it holds it,
+ * {@link #acquire() acquires} a reference. Once the Bitmap has been marked {@link #setRecyclable(boolean) recyclable} and the last reference is
+ * {@link #release() released}, the Bitmap is returned to its {@link BitmapPool} (or recycled, if there is no pool or the pool rejects it).
+ * <p/>
+ * Drawables created from its {@link #getConstantState() constant state} share the same Bitmap and the same reference count.
+ * <p/>
+ * Only Bitmaps decoded by this library are wrapped, so nothing outside of it can be holding them unless it called {@link #getBitmap()}.
+ */
+public class RefCountedBitmapDrawable extends BitmapDrawable {
+    private final Ref mRef;
+
+    /**
+     * This drawable's constant state, which also holds the intrinsic size it reports
+     */
+    private final RefState mState;
+
+    /**
+     * @param res the resources used to determine the target density
+     * @param bitmap the Bitmap to wrap
+     * @param pool the pool to return the Bitmap to once it is released, or null to recycle it
+     */
+    public RefCountedBitmapDrawable(Resources res, Bitmap bitmap, BitmapPool pool) {
+        this(res, new Ref(bitmap, pool));
+    }
+
+    private RefCountedBitmapDrawable(Resources res, Ref ref) {
+        super(res, ref.bitmap);
+        mRef = ref;
+        mState = new RefState(res, ref);
+    }
+
+    /**
+     * Takes a reference to the Bitmap
+     */
+    public void acquire() {
+        mRef.acquire();
+    }
+
+    /**
+     * Releases a reference taken with {@link #acquire()}. If this was the last one and the Bitmap is recyclable, the Bitmap is freed and this
+     * drawable must no longer be drawn.
+     */
+    public void release() {
+        mRef.release();
+    }
+
+    /**
+     * Sets whether the Bitmap may be freed once it is no longer referenced. Until then, releasing the last reference leaves the Bitmap to the
+     * garbage collector as usual.
+     */
+    public void setRecyclable(boolean recyclable) {
+        mRef.setRecyclable(recyclable);
+    }
+
+    /**
+     * @return the number of references currently held
+     */
+    public int getRefCount() {
+        return mRef.getCount();
+    }
+
+    /**
+     * @return true if the Bitmap has been freed, and this drawable can no longer be drawn
+     */
+    public boolean isReleased() {
+        return mRef.isFreed();
+    }
+
+    /**
+     * Reports the given intrinsic size instead of the Bitmap's, which is then drawn scaled to it. Used for previews, which are shown in place of
+     * a larger decode of the same content.
+     */
+    void setIntrinsicSize(int width, int height) {
+        mState.mIntrinsicWidth = width;
+        mState.mIntrinsicHeight = height;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mState.mIntrinsicWidth != -1 ? mState.mIntrinsicWidth : super.getIntrinsicWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mState.mIntrinsicHeight != -1 ? mState.mIntrinsicHeight : super.getIntrinsicHeight();
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    private static final class Ref {
+        final Bitmap bitmap;
+        final BitmapPool pool;
+
+        private int mCount;
+        private boolean mRecyclable;
+        private boolean mFreed;
+
+        Ref(Bitmap bitmap, BitmapPool pool) {
+            this.bitmap = bitmap;
+            this.pool = pool;
+        }
+
+        synchronized void acquire() {
+            mCount++;
+        }
+
+        synchronized void release() {
+            if (mCount > 0) {
+                mCount--;
+                freeIfUnused();
+            }
+        }
+
+        synchronized void setRecyclable(boolean recyclable) {
+            mRecyclable = recyclable;
+        }
+
+        synchronized int getCount() {
+            return mCount;
+        }
+
+        synchronized boolean isFreed() {
+            return mFreed || bitmap.isRecycled();
+        }
+
+        private void freeIfUnused() {
+            if (mCount == 0 && mRecyclable && !mFreed) {
+                mFreed = true;
+
+                if (pool == null || !pool.put(bitmap)) {
+                    bitmap.recycle();
+                }
+            }
+        }
+    }
+
+    private static final class RefState extends ConstantState {
+        private final Resources mResources;
+        private final Ref mRef;
+
+        /**
+         * The intrinsic size reported instead of the Bitmap's, or -1 to report the Bitmap's
+         */
+        int mIntrinsicWidth = -1;
+        int mIntrinsicHeight = -1;
+
+        RefState(Resources res, Ref ref) {
+            mResources = res;
+            mRef = ref;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return newDrawable(null);
+        }
+
+        @Override
+        public Drawable newDrawable(Resources res) {
+            final RefCountedBitmapDrawable drawable = new RefCountedBitmapDrawable(res != null ? res : mResources, mRef);
+            drawable.setIntrinsicSize(mIntrinsicWidth, mIntrinsicHeight);
+            return drawable;
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
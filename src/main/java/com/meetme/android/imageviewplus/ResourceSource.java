@@ -0,0 +1,118 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.net.Uri;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Opens {@link ContentResolver#SCHEME_ANDROID_RESOURCE} Uris, of either form: <code>android.resource://package/id</code> or
+ * <code>android.resource://package/type/name</code>.
+ */
+final class ResourceSource implements ContentSource {
+    /**
+     * A resource, and the Resources of the package it belongs to
+     */
+    static final class Resource {
+        final Resources resources;
+        final int id;
+
+        Resource(Resources resources, int id) {
+            this.resources = resources;
+            this.id = id;
+        }
+    }
+
+    /**
+     * @throws FileNotFoundException if the package or resource doesn't exist
+     */
+    static Resource resolve(Context context, Uri uri) throws FileNotFoundException {
+        final String packageName = uri.getAuthority();
+
+        if (packageName == null || packageName.length() == 0) {
+            throw new FileNotFoundException("No package in " + uri);
+        }
+
+        final Resources resources;
+
+        if (packageName.equals(context.getPackageName())) {
+            resources = context.getResources();
+        } else {
+            try {
+                resources = context.getPackageManager().getResourcesForApplication(packageName);
+            } catch (PackageManager.NameNotFoundException e) {
+                throw new FileNotFoundException("No package found for " + uri);
+            }
+        }
+
+        final List<String> path = uri.getPathSegments();
+        int id = 0;
+
+        if (path.size() == 1) {
+            try {
+                id = Integer.parseInt(path.get(0));
+            } catch (NumberFormatException ignored) {
+            }
+        } else if (path.size() == 2) {
+            id = resources.getIdentifier(path.get(1), path.get(0), packageName);
+        }
+
+        if (id == 0) {
+            throw new FileNotFoundException("No resource found for " + uri);
+        }
+
+        return new Resource(resources, id);
+    }
+
+    @Override
+    public String getType(Context context, Uri uri) {
+        return null;
+    }
+
+    @Override
+    public InputStream openStream(Context context, Uri uri) throws IOException {
+        final Resource resource = resolve(context, uri);
+
+        try {
+            return resource.resources.openRawResource(resource.id);
+        } catch (Resources.NotFoundException e) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+    }
+
+    @Override
+    public AssetFileDescriptor openDescriptor(Context context, Uri uri) throws IOException {
+        final Resource resource = resolve(context, uri);
+
+        try {
+            // Null if the resource is compressed in the APK
+            return resource.resources.openRawResourceFd(resource.id);
+        } catch (Resources.NotFoundException e) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+    }
+}
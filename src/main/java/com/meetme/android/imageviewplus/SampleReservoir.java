@@ -0,0 +1,87 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a fixed number of the most recent samples of a metric and computes percentiles of them. Not thread safe. Free of Android dependencies
+ * so that it can be benchmarked on a plain JVM.
+ *
+ * @see ImageLoadMetrics
+ */
+final class SampleReservoir {
+    private final long[] mSamples;
+
+    /**
+     * Where the next sample goes, overwriting the oldest once the reservoir is full
+     */
+    private int mIndex;
+    private int mCount;
+
+    /**
+     * @param capacity the number of most recent samples to keep
+     */
+    SampleReservoir(int capacity) {
+        mSamples = new long[capacity];
+    }
+
+    void record(long value) {
+        mSamples[mIndex] = value;
+
+        if (++mIndex == mSamples.length) {
+            mIndex = 0;
+        }
+
+        if (mCount != Integer.MAX_VALUE) {
+            mCount++;
+        }
+    }
+
+    /**
+     * @return the number of samples recorded since creation or the last {@link #clear()}, of which only the most recent are kept. Saturates at
+     * {@link Integer#MAX_VALUE} rather than overflowing in a long-running process.
+     */
+    int count() {
+        return mCount;
+    }
+
+    void clear() {
+        mIndex = 0;
+        mCount = 0;
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 100
+     * @return the given percentile of the kept samples (nearest rank), or 0 if there are none
+     */
+    long percentile(float percentile) {
+        final int count = Math.min(mCount, mSamples.length);
+
+        if (count == 0) {
+            return 0;
+        }
+
+        final long[] sorted = new long[count];
+        System.arraycopy(mSamples, 0, sorted, 0, count);
+        Arrays.sort(sorted);
+
+        final int rank = (int) Math.ceil(Math.max(0f, Math.min(100f, percentile)) / 100f * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
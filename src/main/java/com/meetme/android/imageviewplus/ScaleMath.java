@@ -0,0 +1,70 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+/**
+ * The scaling arithmetic behind size-aware decoding and {@link ImageViewPlus.PlusScaleType#TOP_CROP}. Free of Android dependencies so that it
+ * can be benchmarked on a plain JVM.
+ */
+final class ScaleMath {
+    private ScaleMath() {
+    }
+
+    /**
+     * @return the factor that scales content of the given intrinsic size to fill the frame's width, or 0 if that would leave part of the frame's
+     * height uncovered (in which case the content is center cropped instead)
+     */
+    static float computeTopCropScale(int frameWidth, int frameHeight, float intrinsicWidth, float intrinsicHeight) {
+        final float scale = frameWidth / intrinsicWidth;
+        return scale * intrinsicHeight < frameHeight ? 0f : scale;
+    }
+
+    /**
+     * @return the largest power of two <code>inSampleSize</code> that still keeps the decoded image at least <code>scale</code> times the source
+     */
+    static int computeSampleSize(float scale) {
+        int sampleSize = 1;
+
+        if (scale > 0f) {
+            while (sampleSize * 2 * scale <= 1f) {
+                sampleSize *= 2;
+            }
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * @param srcSize the width or height of the source image
+     * @param sampleSize the <code>inSampleSize</code> it is decoded with
+     * @param density the <code>inDensity</code> it is decoded with, or 0 if it isn't scaled
+     * @param targetDensity the <code>inTargetDensity</code> it is decoded with, or 0 if it isn't scaled
+     * @return the width or height the platform decoder gives the decoded image: subsampled with the partial last block of pixels kept (as libjpeg
+     * and libpng do), then scaled and rounded
+     */
+    static int computeDecodedSize(int srcSize, int sampleSize, int density, int targetDensity) {
+        final int sample = Math.max(1, sampleSize);
+        int size = Math.max(1, (srcSize + sample - 1) / sample);
+
+        if (density > 0 && targetDensity > 0 && density != targetDensity) {
+            size = (int) (size * ((float) targetDensity / density) + 0.5f);
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,165 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws an image that is too large to be uploaded as a single texture from a grid of smaller Bitmaps, each of which fits. The image is scaled
+ * to the drawable's bounds, like a BitmapDrawable.
+ *
+ * @see ImageViewPlus#setTiledDecoding(boolean)
+ */
+public class TiledBitmapDrawable extends Drawable {
+    private final TiledState mState;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    private int mAlpha = 255;
+
+    /**
+     * @param tiles the tiles, in any order
+     * @param lefts the left edge of each tile within the image
+     * @param tops the top edge of each tile within the image
+     * @param width the width of the whole image
+     * @param height the height of the whole image
+     */
+    TiledBitmapDrawable(Bitmap[] tiles, int[] lefts, int[] tops, int width, int height) {
+        this(new TiledState(tiles, lefts, tops, width, height));
+    }
+
+    private TiledBitmapDrawable(TiledState state) {
+        mState = state;
+    }
+
+    /**
+     * @return the number of tiles the image is drawn from
+     */
+    public int getTileCount() {
+        return mState.mTiles.length;
+    }
+
+    /**
+     * @return the total size of the tiles' pixels, in bytes
+     */
+    public long getByteCount() {
+        long size = 0;
+
+        for (Bitmap tile : mState.mTiles) {
+            size += DrawableCache.sizeOf(tile);
+        }
+
+        return size;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Rect bounds = getBounds();
+        final int saveCount = canvas.save();
+
+        canvas.translate(bounds.left, bounds.top);
+
+        if (bounds.width() != mState.mWidth || bounds.height() != mState.mHeight) {
+            canvas.scale((float) bounds.width() / mState.mWidth, (float) bounds.height() / mState.mHeight);
+        }
+
+        for (int i = 0; i < mState.mTiles.length; i++) {
+            canvas.drawBitmap(mState.mTiles[i], mState.mLefts[i], mState.mTops[i], mPaint);
+        }
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mState.mWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mState.mHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (alpha != mAlpha) {
+            mAlpha = alpha;
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        if (mAlpha < 255) {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        for (Bitmap tile : mState.mTiles) {
+            if (tile.hasAlpha()) {
+                return PixelFormat.TRANSLUCENT;
+            }
+        }
+
+        return PixelFormat.OPAQUE;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    /**
+     * The tiles, shared by every drawable created from the same decode
+     */
+    private static final class TiledState extends ConstantState {
+        final Bitmap[] mTiles;
+        final int[] mLefts;
+        final int[] mTops;
+        final int mWidth;
+        final int mHeight;
+
+        TiledState(Bitmap[] tiles, int[] lefts, int[] tops, int width, int height) {
+            mTiles = tiles;
+            mLefts = lefts;
+            mTops = tops;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new TiledBitmapDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/* {@formatter:off} */
+/**
+ * Copyright 2013 MeetMe, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* {@formatter:on} */
+package com.meetme.android.imageviewplus;
+
+import android.graphics.ColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.util.SparseArray;
+
+/**
+ * The overlay tint filters of every {@link ImageViewPlus}, one per color. Filters are immutable once created, so the colors resolved from any
+ * overlay tint ColorStateList share them, and tinting on a state change doesn't allocate.
+ * <p/>
+ * Only used from the UI thread.
+ */
+final class TintFilters {
+    /**
+     * More distinct tint colors than any app uses; the cache is simply started over if it is exceeded
+     */
+    private static final int MAX_SIZE = 64;
+
+    private static final SparseArray<ColorFilter> sFilters = new SparseArray<ColorFilter>();
+
+    private TintFilters() {
+    }
+
+    /**
+     * @return the shared SRC_ATOP filter for the color
+     */
+    static ColorFilter get(int color) {
+        ColorFilter filter = sFilters.get(color);
+
+        if (filter == null) {
+            if (sFilters.size() >= MAX_SIZE) {
+                sFilters.clear();
+            }
+
+            filter = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+            sFilters.put(color, filter);
+        }
+
+        return filter;
+    }
+}